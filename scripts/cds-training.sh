@@ -0,0 +1,29 @@
+#!/bin/sh
+# Writes an AppCDS archive (application.jsa) for the application extracted into the given
+# directory by mvn -Pfast-startup (app.jar plus lib/). The training run starts the Spring context
+# with its AOT-generated initializers and exits once it is refreshed, before the web server starts;
+# the JVM then dumps every class it loaded. Run it with the same JVM that will use the archive: a
+# different JVM build ignores it. Called by mvn -Pfast-startup during package, and by the
+# Dockerfile in the runtime image.
+set -eu
+
+dir="${1:?usage: cds-training.sh <extracted-dir>}"
+# The java launcher to train with, if not the one on the PATH
+java="${JAVA:-java}"
+
+# Building the context creates the audio spill directory; a throw-away one keeps the training
+# run from leaving the default one behind, owned by whoever ran it
+spill="$(mktemp -d)"
+trap 'rm -rf "$spill"' EXIT
+
+# The context only has to be built, not to reach Azure OpenAI: any endpoint will do, and no
+# credential is looked up
+cd "$dir"
+AZURE_OPENAI_ENDPOINT="${AZURE_OPENAI_ENDPOINT:-http://localhost:8089}" \
+AZURE_OPENAI_AUTH=none \
+AUDIO_STORE_SPILL_DIRECTORY="$spill" \
+SPRING_PROFILES_ACTIVE="${SPRING_PROFILES_ACTIVE:-prod}" \
+"$java" -XX:ArchiveClassesAtExit=application.jsa -Xlog:cds=error \
+    -Dspring.aot.enabled=true \
+    -Dspring.context.exit=onRefresh \
+    -jar app.jar
@@ -0,0 +1,26 @@
+#!/bin/sh
+# Writes .gz and .br files next to the compressible static assets in the given directory (the
+# build output, e.g. target/classes/static), for the prod profile to serve to clients that accept
+# them. Run by mvn -Pprod during prepare-package. Brotli needs the brotli CLI; without it only
+# gzip files are written.
+set -eu
+
+dir="${1:?usage: precompress-static.sh <static-dir>}"
+[ -d "$dir" ] || exit 0
+
+if command -v brotli >/dev/null 2>&1; then
+    has_brotli=1
+else
+    has_brotli=0
+    echo "precompress-static: brotli not found, writing gzip files only" >&2
+fi
+
+# Files too small to gain anything from compression are left alone
+find "$dir" -type f -size +255c \
+    \( -name '*.css' -o -name '*.js' -o -name '*.html' -o -name '*.svg' -o -name '*.json' -o -name '*.txt' \) |
+while IFS= read -r file; do
+    gzip -9 -n -k -f "$file"
+    if [ "$has_brotli" = 1 ]; then
+        brotli -q 11 -k -f "$file"
+    fi
+done
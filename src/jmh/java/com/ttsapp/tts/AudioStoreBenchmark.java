@@ -0,0 +1,90 @@
+package com.ttsapp.tts;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// store and retrieve with clip sizes from a short MP3 to a long WAV, using the default budgets,
+// so large clips go through eviction and the disk spill just as they would in production, and
+// against the durable log alone
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AudioStoreBenchmark {
+
+    @Param({"51200", "524288", "5242880"})
+    int payloadBytes;
+
+    // With the durable log on and no heap tier, so every clip is written to and read back from a segment
+    @Param({"false", "true"})
+    boolean durable;
+
+    private AudioStore store;
+    private Path spillDirectory;
+    private byte[] payload;
+    private String storedId;
+
+    @Setup
+    public void setUp() throws IOException {
+        spillDirectory = Files.createTempDirectory("audio-store-benchmark");
+        store = new AudioStore(DataSize.ofMegabytes(durable ? 0 : 64), DataSize.ofGigabytes(1), spillDirectory.toString(),
+                Duration.ofMinutes(10), 0.8, DataSize.ofMegabytes(64), true,
+                durable ? spillDirectory.toString() : "", DataSize.ofGigabytes(1), Duration.ofHours(24), DataSize.ofMegabytes(64),
+                new SimpleMeterRegistry());
+        payload = new byte[payloadBytes];
+        ThreadLocalRandom.current().nextBytes(payload);
+        storedId = store.store(payload, "mp3");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        store.shutdown();
+        // The spill tier deletes its files asynchronously, so some may already be gone
+        try (Stream<Path> files = Files.list(spillDirectory)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.deleteIfExists(spillDirectory);
+    }
+
+    // A fresh clip every time: content hash, insert, and whatever eviction and spilling that causes
+    @Benchmark
+    public String store() {
+        return store.store(payload, "mp3");
+    }
+
+    @Benchmark
+    public StoredAudio retrieve() {
+        return store.retrieve(storedId);
+    }
+
+    // What /audio/{id} does with it: the whole clip copied out to the response
+    @Benchmark
+    public int retrieveAndWrite() throws IOException {
+        StoredAudio audio = store.retrieve(storedId);
+        audio.writeTo(OutputStream.nullOutputStream());
+        return audio.getLength();
+    }
+}
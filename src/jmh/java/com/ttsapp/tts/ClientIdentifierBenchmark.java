@@ -0,0 +1,52 @@
+package com.ttsapp.tts;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.concurrent.TimeUnit;
+
+// Client identification for each header the service looks at, including a proxy chain in
+// X-Forwarded-For as it arrives through Azure Container Apps ingress
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClientIdentifierBenchmark {
+
+    @Param({"forwarded-chain", "real-ip", "original-forwarded", "remote-address"})
+    String source;
+
+    private ClientIdentifierService service;
+    private MockHttpServletRequest request;
+
+    @Setup
+    public void setUp() {
+        service = new ClientIdentifierService();
+        request = new MockHttpServletRequest("POST", "/api/quick-tts");
+        request.setRemoteAddr("10.0.0.12");
+        switch (source) {
+            case "forwarded-chain" -> request.addHeader("X-Forwarded-For", "203.0.113.7, 198.51.100.23, 10.0.0.4");
+            case "real-ip" -> request.addHeader("X-Real-IP", "203.0.113.7");
+            case "original-forwarded" -> request.addHeader("X-Original-Forwarded-For", "203.0.113.7, 10.0.0.4");
+            default -> {
+            }
+        }
+    }
+
+    @Benchmark
+    public String getClientIdentifier() {
+        return service.getClientIdentifier(request);
+    }
+}
@@ -0,0 +1,104 @@
+package com.ttsapp.tts;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// What keeping WAV clips compacted costs and saves: encoding on store, and writing the whole clip
+// out as /audio/{id} does, from the plain array and decoded from the compact form. The heap saved
+// per clip is printed at setup. The clip is synthetic speech-like PCM (SpeechLikeAudio); real
+// speech compresses about as well, pure noise not at all (and is then kept as it is).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompactWavBenchmark {
+
+    @Param({"5", "60"})
+    int seconds;
+
+    private byte[] wav;
+    private StoredAudio plain;
+    private StoredAudio compacted;
+    private final OutputStream sink = new ResponseBuffer();
+
+    @Setup
+    public void setUp() throws IOException {
+        wav = SpeechLikeAudio.wav(seconds);
+        plain = new StoredAudio(wav, "wav");
+        compacted = StoredAudio.compacted(wav, "wav");
+        byte[] decoded;
+        try (InputStream in = compacted.asResource().getInputStream()) {
+            decoded = in.readAllBytes();
+        }
+        if (!compacted.isCompacted() || !Arrays.equals(wav, decoded)) {
+            throw new IllegalStateException("Compact WAV did not round-trip");
+        }
+        System.out.printf("%n%d s clip: %d bytes on the heap as is, %d compacted (%.1f%%), %d saved%n", seconds,
+                wav.length, compacted.getFootprint(), 100.0 * compacted.getFootprint() / wav.length,
+                wav.length - compacted.getFootprint());
+    }
+
+    @Benchmark
+    public StoredAudio encode() {
+        return StoredAudio.compacted(wav, "wav");
+    }
+
+    @Benchmark
+    public int writePlain() throws IOException {
+        plain.writeTo(sink);
+        return plain.getLength();
+    }
+
+    @Benchmark
+    public int writeCompacted() throws IOException {
+        compacted.writeTo(sink);
+        return compacted.getLength();
+    }
+
+    // A 64 KB range from the middle, as a seeking audio element asks for
+    @Benchmark
+    public int readRangeCompacted() throws IOException {
+        byte[] range = new byte[64 * 1024];
+        try (InputStream in = compacted.asResource().getInputStream()) {
+            in.skip(wav.length / 2);
+            return in.readNBytes(range, 0, range.length);
+        }
+    }
+
+    // Copies what is written into a fixed buffer, as the servlet response buffer does on its way to the socket
+    private static final class ResponseBuffer extends OutputStream {
+        private final byte[] buffer = new byte[8192];
+
+        @Override
+        public void write(int b) {
+            buffer[0] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            while (len > 0) {
+                int count = Math.min(len, buffer.length);
+                System.arraycopy(b, off, buffer, 0, count);
+                off += count;
+                len -= count;
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.ttsapp.tts;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.context.IExpressionContext;
+import org.thymeleaf.linkbuilder.StandardLinkBuilder;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+// The per-request CPU the prod profile saves: rendering index.html with the template cache off
+// (the default profile) and on, and gzipping styles.css, which server-side compression would do
+// on every request and the precompressed .gz file avoids. gzipPage is what response compression
+// adds back for the rendered page.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PageRenderingBenchmark {
+
+    @Param({"false", "true"})
+    boolean templateCache;
+
+    private SpringTemplateEngine templateEngine;
+    private VibeService vibeService;
+    private byte[] page;
+    private byte[] stylesheet;
+
+    @Setup
+    public void setUp() throws IOException {
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode(TemplateMode.HTML);
+        resolver.setCharacterEncoding("UTF-8");
+        resolver.setCacheable(templateCache);
+        templateEngine = new SpringTemplateEngine();
+        templateEngine.setTemplateResolver(resolver);
+        // Outside a servlet request there is no context path to prefix links with
+        templateEngine.setLinkBuilder(new StandardLinkBuilder() {
+            @Override
+            protected String computeContextPath(IExpressionContext context, String base, Map<String, Object> parameters) {
+                return "";
+            }
+        });
+        vibeService = new VibeService("", new SimpleMeterRegistry());
+
+        page = renderIndex().getBytes(StandardCharsets.UTF_8);
+        try (InputStream css = getClass().getResourceAsStream("/static/styles.css")) {
+            stylesheet = css.readAllBytes();
+        }
+    }
+
+    @Benchmark
+    public String renderIndex() {
+        Context context = new Context();
+        context.setVariable("voices", TtsController.AVAILABLE_VOICES);
+        context.setVariable("vibes", vibeService.getRandomVibes(6));
+        context.setVariable("allVibes", vibeService.getAllVibes());
+        context.setVariable("maxTextLength", 20000);
+        StringWriter writer = new StringWriter(32 * 1024);
+        templateEngine.process("index", context, writer);
+        return writer.toString();
+    }
+
+    @Benchmark
+    public byte[] gzipStylesheet() throws IOException {
+        return gzip(stylesheet);
+    }
+
+    @Benchmark
+    public byte[] gzipPage() throws IOException {
+        return gzip(page);
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+}
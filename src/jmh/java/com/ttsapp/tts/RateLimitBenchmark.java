@@ -0,0 +1,82 @@
+package com.ttsapp.tts;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// isAllowed under contention: 8 threads on one client (every check races on the same state) or
+// spread over 1000 clients, on the path where requests are admitted and where they are rejected.
+// The legacy limiter is the three-Caffeine-cache implementation this replaced.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class RateLimitBenchmark {
+
+    @Param({"1", "1000"})
+    int clients;
+
+    @Param({"admitted", "rejected"})
+    String outcome;
+
+    private RateLimitService gcra;
+    private LegacyRateLimitService legacy;
+    private InMemoryRateLimitStore store;
+    private String[] clientIds;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void setUp() {
+        RateLimitProperties properties = new RateLimitProperties();
+        if (outcome.equals("admitted")) {
+            properties.setMaxRequestsPerMinute(Integer.MAX_VALUE);
+            properties.setMaxRequestsPerHour(Integer.MAX_VALUE);
+            properties.setMaxCharactersPerHour(Integer.MAX_VALUE);
+        } else {
+            properties.setMaxRequestsPerMinute(0);
+        }
+        store = new InMemoryRateLimitStore();
+        gcra = new RateLimitService(properties, store, new SimpleMeterRegistry());
+        legacy = new LegacyRateLimitService(properties);
+
+        clientIds = new String[clients];
+        for (int i = 0; i < clients; i++) {
+            clientIds[i] = "203.0.113." + (i % 256) + "-" + i;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        store.close();
+    }
+
+    @Benchmark
+    public boolean gcra(Cursor cursor) {
+        return gcra.isAllowed(clientIds[cursor.next++ % clientIds.length], 200);
+    }
+
+    @Benchmark
+    public boolean legacy(Cursor cursor) {
+        return legacy.isAllowed(clientIds[cursor.next++ % clientIds.length], 200);
+    }
+}
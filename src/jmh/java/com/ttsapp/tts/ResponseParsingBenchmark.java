@@ -0,0 +1,116 @@
+package com.ttsapp.tts;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Extracting the audio from a chat-completions response shaped like a captured one, carrying a
+// base64 WAV of speech-like PCM: the streaming codec OpenAIService uses now, against the path it
+// replaced (the body read as a String, parsed into a Map, and the base64 String decoded). The
+// allocation matters more than the time; the bytes each path allocates per call are printed at
+// setup, and -prof gc reports the same as gc.alloc.rate.norm.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseParsingBenchmark {
+
+    // About 96 KB and 1.4 MB of audio
+    @Param({"2", "30"})
+    int seconds;
+
+    private byte[] responseJson;
+    private ChatCompletionsCodec codec;
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] audio = SpeechLikeAudio.wav(seconds);
+        try (InputStream sample = getClass().getResourceAsStream("/sample-chat-completion.json")) {
+            String template = new String(sample.readAllBytes(), StandardCharsets.UTF_8);
+            responseJson = template.replace("${AUDIO}", Base64.getEncoder().encodeToString(audio))
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+        codec = new ChatCompletionsCodec(new JsonFactory(), "gpt-audio", new SimpleMeterRegistry());
+        objectMapper = new ObjectMapper();
+
+        ByteBuffer decoded = parseWithCodec();
+        byte[] fromCodec = Arrays.copyOfRange(decoded.array(), decoded.arrayOffset() + decoded.position(),
+                decoded.arrayOffset() + decoded.limit());
+        if (!Arrays.equals(audio, fromCodec) || !Arrays.equals(audio, parseAsStringAndMap())) {
+            throw new IllegalStateException("Parsers disagree on the audio");
+        }
+        System.out.printf("%n%d s clip, %d byte response: codec allocates %d bytes per call, String and Map %d%n",
+                seconds, responseJson.length, allocatedPerCall(this::parseWithCodec),
+                allocatedPerCall(this::parseAsStringAndMap));
+    }
+
+    @Benchmark
+    public ByteBuffer codec() throws IOException {
+        return parseWithCodec();
+    }
+
+    @Benchmark
+    public byte[] stringAndMap() throws IOException {
+        return parseAsStringAndMap();
+    }
+
+    private ByteBuffer parseWithCodec() throws IOException {
+        return codec.readAudio(new ByteArrayInputStream(responseJson), responseJson.length);
+    }
+
+    // The old path: BodyHandlers.ofString() decoded the whole body into a String first
+    @SuppressWarnings("unchecked")
+    private byte[] parseAsStringAndMap() throws IOException {
+        String body = new String(responseJson, StandardCharsets.UTF_8);
+        Map<String, Object> response = objectMapper.readValue(body, Map.class);
+        List<Map<String, Object>> choices = (List<Map<String, Object>>) response.get("choices");
+        Map<String, Object> message = (Map<String, Object>) choices.get(0).get("message");
+        Map<String, Object> audio = (Map<String, Object>) message.get("audio");
+        return Base64.getDecoder().decode((String) audio.get("data"));
+    }
+
+    // Heap the calling thread allocates per call, once warm: the same measure as the GC profiler's
+    // gc.alloc.rate.norm
+    private static long allocatedPerCall(ParsePath path) throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < 20; i++) {
+            path.parse();
+        }
+        long start = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 20; i++) {
+            path.parse();
+        }
+        return (threads.getCurrentThreadAllocatedBytes() - start) / 20;
+    }
+
+    @FunctionalInterface
+    private interface ParsePath {
+        Object parse() throws IOException;
+    }
+}
@@ -0,0 +1,47 @@
+package com.ttsapp.tts;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Synthetic speech-like PCM (voiced syllables with harmonics, pauses and a low noise floor) at the
+// chat-completions rate of 24 kHz, as a WAV file. Real speech compresses and encodes about like
+// this; random bytes don't.
+final class SpeechLikeAudio {
+
+    private SpeechLikeAudio() {
+    }
+
+    static byte[] wav(int seconds) {
+        int rate = WavHeader.PCM16_SAMPLE_RATE;
+        int samples = seconds * rate;
+        byte[] wav = Arrays.copyOf(WavHeader.pcm16(samples * 2), WavHeader.SIZE + samples * 2);
+        Random random = new Random(42);
+        int i = 0;
+        while (i < samples) {
+            // A syllable of 120-300 ms, then a pause of 40-250 ms
+            int voiced = Math.min(samples - i, rate * (120 + random.nextInt(180)) / 1000);
+            double f0 = 100 + random.nextInt(120);
+            double amplitude = 3000 + random.nextInt(9000);
+            for (int n = 0; n < voiced; n++, i++) {
+                double t = (double) n / rate;
+                double envelope = Math.sin(Math.PI * n / voiced);
+                double value = 0;
+                for (int harmonic = 1; harmonic <= 6; harmonic++) {
+                    value += Math.sin(2 * Math.PI * f0 * harmonic * t) / harmonic;
+                }
+                put(wav, i, (int) (amplitude * envelope * value / 2) + random.nextInt(33) - 16);
+            }
+            int pause = Math.min(samples - i, rate * (40 + random.nextInt(210)) / 1000);
+            for (int n = 0; n < pause; n++, i++) {
+                put(wav, i, random.nextInt(9) - 4);
+            }
+        }
+        return wav;
+    }
+
+    private static void put(byte[] wav, int sample, int value) {
+        int clamped = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+        wav[WavHeader.SIZE + 2 * sample] = (byte) clamped;
+        wav[WavHeader.SIZE + 2 * sample + 1] = (byte) (clamped >> 8);
+    }
+}
@@ -0,0 +1,65 @@
+package com.ttsapp.tts;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+// The random vibe selection behind every page render and /api/vibes, and the lookup behind
+// /api/vibe/{name}, over the bundled catalog (0) and synthetic catalogs of the given size
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VibeServiceBenchmark {
+
+    @Param({"6"})
+    int count;
+
+    @Param({"0", "5000"})
+    int catalogSize;
+
+    private VibeService vibeService;
+    private String lastName;
+
+    @Setup
+    public void setUp() throws IOException {
+        if (catalogSize == 0) {
+            vibeService = new VibeService("", new SimpleMeterRegistry());
+        } else {
+            List<VibeService.Vibe> vibes = new ArrayList<>(catalogSize);
+            for (int i = 0; i < catalogSize; i++) {
+                vibes.add(new VibeService.Vibe("Vibe " + i, "Description " + i, "Script " + i));
+            }
+            vibeService = new VibeService(vibes);
+        }
+        List<VibeService.Vibe> all = vibeService.getAllVibes();
+        lastName = all.get(all.size() - 1).getName().toUpperCase();
+    }
+
+    @Benchmark
+    public List<VibeService.Vibe> getRandomVibes() {
+        return vibeService.getRandomVibes(count);
+    }
+
+    @Benchmark
+    public Optional<VibeService.Vibe> getVibeByName() {
+        return vibeService.getVibeByName(lastName);
+    }
+}
@@ -0,0 +1,351 @@
+package com.ttsapp.tts;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Replays a request log against a running instance and reports throughput, latency percentiles
+// per endpoint, response statuses and the server's heap use (from its actuator metrics).
+//
+// The log is JSON lines, one request each; only the text is required:
+//   {"endpoint": "/api/quick-tts", "text": "...", "voice": "alloy", "style": "...", "format": "mp3", "client": "203.0.113.7"}
+// "body" is accepted in place of "text", other fields are ignored. Lines are replayed in order
+// and the log wraps around until the run ends.
+//
+// Options (all --name=value):
+//   --target=http://localhost:8080
+//   --log=PATH                 defaults to the bundled sample-requests.jsonl
+//   --concurrency=32           requests in flight at once
+//   --rate=0                   requests per second to start (open loop); 0 sends as fast as
+//                              the concurrency allows (closed loop)
+//   --duration=60s | --requests=N
+//   --clients=1000             distinct X-Forwarded-For addresses for lines without a client
+//   --unique=false             append a counter to each text so the synthesis cache never hits
+public class LoadGenerator {
+
+    private final HttpClient httpClient;
+    private final URI target;
+    private final List<LoggedRequest> log;
+    private final int concurrency;
+    private final double rate;
+    private final int clients;
+    private final boolean unique;
+    private final Map<String, Recorder> recorders = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> statuses = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    public LoadGenerator(URI target, List<LoggedRequest> log, int concurrency, double rate, int clients, boolean unique) {
+        this.target = target;
+        this.log = log;
+        this.concurrency = concurrency;
+        this.rate = rate;
+        this.clients = clients;
+        this.unique = unique;
+        this.httpClient = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        List<LoggedRequest> log = readLog(options.get("log"));
+        LoadGenerator generator = new LoadGenerator(
+                URI.create(options.getOrDefault("target", "http://localhost:8080")),
+                log,
+                Integer.parseInt(options.getOrDefault("concurrency", "32")),
+                Double.parseDouble(options.getOrDefault("rate", "0")),
+                Integer.parseInt(options.getOrDefault("clients", "1000")),
+                Boolean.parseBoolean(options.getOrDefault("unique", "false")));
+
+        long requests = Long.parseLong(options.getOrDefault("requests", "0"));
+        Duration duration = requests > 0 ? null : parseDuration(options.getOrDefault("duration", "60s"));
+        generator.run(duration, requests);
+    }
+
+    public void run(Duration duration, long maxRequests) throws InterruptedException {
+        System.out.printf("Replaying %d logged requests against %s: concurrency %d, %s, %s%n",
+                log.size(), target, concurrency, rate > 0 ? rate + " req/s" : "closed loop",
+                maxRequests > 0 ? maxRequests + " requests" : duration.toSeconds() + " s");
+
+        HeapSampler heap = new HeapSampler();
+        heap.start();
+        Semaphore permits = new Semaphore(concurrency);
+        long start = System.nanoTime();
+        long deadline = duration != null ? start + duration.toNanos() : Long.MAX_VALUE;
+        long intervalNanos = rate > 0 ? (long) (1_000_000_000L / rate) : 0;
+
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; maxRequests == 0 || i < maxRequests; i++) {
+                // In open loop, latency is measured from when the request was due, so a backed-up
+                // server can't hide its queueing by slowing the generator down
+                long due = intervalNanos > 0 ? start + i * intervalNanos : System.nanoTime();
+                if (due >= deadline) {
+                    break;
+                }
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                permits.acquire();
+                if (System.nanoTime() >= deadline) {
+                    permits.release();
+                    break;
+                }
+                LoggedRequest request = log.get((int) (i % log.size()));
+                workers.submit(() -> {
+                    try {
+                        send(request, due);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        heap.stop();
+        report(elapsed, heap);
+    }
+
+    private void send(LoggedRequest logged, long due) {
+        long n = sequence.incrementAndGet();
+        String text = unique ? logged.text() + " (" + n + ")" : logged.text();
+        String client = logged.client() != null ? logged.client() : syntheticClient(n);
+
+        StringBuilder form = new StringBuilder()
+                .append("text=").append(encode(text))
+                .append("&voice=").append(encode(logged.voice()))
+                .append("&format=").append(encode(logged.format()));
+        if (logged.style() != null) {
+            form.append("&style=").append(encode(logged.style()));
+        }
+        HttpRequest request = HttpRequest.newBuilder(target.resolve(logged.endpoint()))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .header("X-Forwarded-For", client)
+                .POST(HttpRequest.BodyPublishers.ofString(form.toString()))
+                .timeout(Duration.ofMinutes(3))
+                .build();
+
+        String status;
+        try {
+            HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+            status = String.valueOf(response.statusCode());
+        } catch (IOException e) {
+            status = e.getClass().getSimpleName();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long latency = System.nanoTime() - due;
+        recorders.computeIfAbsent(logged.endpoint(), k -> new Recorder()).record(latency);
+        statuses.computeIfAbsent(logged.endpoint() + " " + status, k -> new LongAdder()).increment();
+    }
+
+    private String syntheticClient(long n) {
+        long client = n % Math.max(1, clients);
+        return "10." + (client >> 16 & 0xff) + "." + (client >> 8 & 0xff) + "." + (client & 0xff);
+    }
+
+    private void report(long elapsedNanos, HeapSampler heap) {
+        double seconds = elapsedNanos / 1e9;
+        long total = recorders.values().stream().mapToLong(Recorder::count).sum();
+        System.out.printf("%nCompleted %d requests in %.1f s: %.1f req/s%n", total, seconds, total / seconds);
+
+        System.out.printf("%n%-20s %8s %10s %10s %10s %10s%n", "endpoint", "requests", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        new TreeMap<>(recorders).forEach((endpoint, recorder) -> {
+            long[] sorted = recorder.sorted();
+            System.out.printf("%-20s %8d %10.1f %10.1f %10.1f %10.1f%n", endpoint, sorted.length,
+                    percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99), percentile(sorted, 1.0));
+        });
+
+        System.out.printf("%nResponses:%n");
+        new TreeMap<>(statuses).forEach((key, count) -> System.out.printf("  %-30s %d%n", key, count.sum()));
+
+        if (heap.samples() > 0) {
+            System.out.printf("%nServer heap: max %.1f MB, mean %.1f MB over %d samples%n",
+                    heap.max() / 1048576.0, heap.mean() / 1048576.0, heap.samples());
+        } else {
+            System.out.printf("%nServer heap: not available (is /actuator/metrics exposed?)%n");
+        }
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    static List<LoggedRequest> readLog(String path) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<LoggedRequest> requests = new ArrayList<>();
+        try (InputStream in = path != null ? Files.newInputStream(Path.of(path))
+                : LoadGenerator.class.getResourceAsStream("/sample-requests.jsonl");
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonNode node = objectMapper.readTree(line);
+                String text = node.hasNonNull("text") ? node.get("text").asText() : node.path("body").asText("");
+                if (text.isBlank()) {
+                    continue;
+                }
+                requests.add(new LoggedRequest(
+                        node.path("endpoint").asText("/api/quick-tts"),
+                        text,
+                        node.path("voice").asText("alloy"),
+                        node.hasNonNull("style") ? node.get("style").asText() : null,
+                        node.path("format").asText("mp3"),
+                        node.hasNonNull("client") ? node.get("client").asText() : null));
+            }
+        }
+        if (requests.isEmpty()) {
+            throw new IllegalArgumentException("No requests in log " + (path != null ? path : "sample-requests.jsonl"));
+        }
+        return requests;
+    }
+
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            int equals = arg.indexOf('=');
+            if (equals < 0) {
+                options.put(arg.substring(2), "true");
+            } else {
+                options.put(arg.substring(2, equals), arg.substring(equals + 1));
+            }
+        }
+        return options;
+    }
+
+    static Duration parseDuration(String value) {
+        if (value.endsWith("m")) {
+            return Duration.ofMinutes(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        return Duration.ofSeconds(Long.parseLong(value.endsWith("s") ? value.substring(0, value.length() - 1) : value));
+    }
+
+    record LoggedRequest(String endpoint, String text, String voice, String style, String format, String client) {
+    }
+
+    // Every latency of the run, kept exactly; a run of a few hundred thousand requests is a few MB
+    private static final class Recorder {
+        private long[] latencies = new long[1024];
+        private int count;
+
+        synchronized void record(long nanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+
+        synchronized long count() {
+            return count;
+        }
+
+        synchronized long[] sorted() {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+    // Polls the server's used heap once a second through the actuator
+    private final class HeapSampler {
+        private final ObjectMapper objectMapper = new ObjectMapper();
+        private final URI uri = target.resolve("/actuator/metrics/jvm.memory.used?tag=area:heap");
+        private volatile boolean running = true;
+        private Thread thread;
+        private long max;
+        private long sum;
+        private int samples;
+
+        void start() {
+            thread = Thread.ofVirtual().name("heap-sampler").start(() -> {
+                while (running) {
+                    sample();
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+        }
+
+        void stop() throws InterruptedException {
+            running = false;
+            thread.interrupt();
+            thread.join();
+        }
+
+        private void sample() {
+            try {
+                HttpResponse<byte[]> response = httpClient.send(HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(5)).build(),
+                        HttpResponse.BodyHandlers.ofByteArray());
+                if (response.statusCode() != 200) {
+                    return;
+                }
+                long used = objectMapper.readTree(response.body()).path("measurements").path(0).path("value").asLong();
+                synchronized (this) {
+                    max = Math.max(max, used);
+                    sum += used;
+                    samples++;
+                }
+            } catch (IOException e) {
+                // Server not up yet, or gone; keep trying
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized long max() {
+            return max;
+        }
+
+        synchronized double mean() {
+            return samples > 0 ? (double) sum / samples : 0;
+        }
+
+        synchronized int samples() {
+            return samples;
+        }
+    }
+}
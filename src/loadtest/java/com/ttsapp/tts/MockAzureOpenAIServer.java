@@ -0,0 +1,263 @@
+package com.ttsapp.tts;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Stand-in for the Azure OpenAI chat-completions audio endpoint, for load tests on one machine
+// without network access or a billed deployment. Run the app against it with
+//   AZURE_OPENAI_ENDPOINT=http://localhost:8089 AZURE_OPENAI_AUTH=none
+//
+// Options (all --name=value):
+//   --port=8089
+//   --audio-bytes=240000       decoded audio per response (240 KB is ~15 s of 128 kbps MP3)
+//   --latency=lognormal:800:0.5  time to the response (or first stream chunk): fixed:MS,
+//                              uniform:MIN:MAX or lognormal:MEDIAN:SIGMA, in milliseconds
+//   --rate-429=0.0             share of requests answered 429 with Retry-After
+//   --retry-after=1000         delay the 429s ask for, in milliseconds; sent as retry-after-ms and
+//                              (rounded up to seconds) Retry-After, like Azure OpenAI does
+//   --rate-5xx=0.0             share of requests answered 500, 502 or 503
+//   --stream-chunks=20         audio deltas per streamed response
+//   --chunk-interval=50        milliseconds between streamed deltas
+//
+// Audio is silent but well-formed for the service's stitching: MPEG frames for mp3 (and any
+// other format), a PCM WAV for wav, raw PCM for streamed pcm16.
+public class MockAzureOpenAIServer {
+
+    private static final String PATH = "/openai/v1/chat/completions";
+    // MPEG-1 Layer III, 128 kbps, 44.1 kHz, no padding: 417-byte frames
+    private static final byte[] MP3_FRAME_HEADER = {(byte) 0xFF, (byte) 0xFB, (byte) 0x90, (byte) 0x64};
+    private static final int MP3_FRAME_LENGTH = 417;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final int audioBytes;
+    private final LatencyDistribution latency;
+    private final double rate429;
+    private final long retryAfterMillis;
+    private final double rate5xx;
+    private final int streamChunks;
+    private final long chunkIntervalMillis;
+    // Encoded response bodies are the same for every request of a format, so build each once
+    private final Map<String, byte[]> responseBodies = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> responseCounts = new ConcurrentHashMap<>();
+    private final AtomicLong inFlight = new AtomicLong();
+
+    public MockAzureOpenAIServer(int audioBytes, LatencyDistribution latency, double rate429, long retryAfterMillis,
+                                 double rate5xx, int streamChunks, long chunkIntervalMillis) {
+        this.audioBytes = audioBytes;
+        this.latency = latency;
+        this.rate429 = rate429;
+        this.retryAfterMillis = retryAfterMillis;
+        this.rate5xx = rate5xx;
+        this.streamChunks = streamChunks;
+        this.chunkIntervalMillis = chunkIntervalMillis;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = LoadGenerator.parseOptions(args);
+        int port = Integer.parseInt(options.getOrDefault("port", "8089"));
+        MockAzureOpenAIServer mock = new MockAzureOpenAIServer(
+                Integer.parseInt(options.getOrDefault("audio-bytes", "240000")),
+                LatencyDistribution.parse(options.getOrDefault("latency", "lognormal:800:0.5")),
+                Double.parseDouble(options.getOrDefault("rate-429", "0")),
+                Long.parseLong(options.getOrDefault("retry-after", "1000")),
+                Double.parseDouble(options.getOrDefault("rate-5xx", "0")),
+                Integer.parseInt(options.getOrDefault("stream-chunks", "20")),
+                Long.parseLong(options.getOrDefault("chunk-interval", "50")));
+        mock.start(port);
+    }
+
+    public HttpServer start(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 1024);
+        server.createContext(PATH, this::handle);
+        // Every request sleeps through its simulated latency, so give each its own virtual thread
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mock-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(this::report, 10, 10, TimeUnit.SECONDS);
+
+        System.out.printf("Mock Azure OpenAI listening on http://localhost:%d%s (audio %d bytes, latency %s, 429 %.1f%%, 5xx %.1f%%)%n",
+                port, PATH, audioBytes, latency, rate429 * 100, rate5xx * 100);
+        return server;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        inFlight.incrementAndGet();
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, errorBody("405", "Method not allowed"));
+                return;
+            }
+            JsonNode request;
+            try (InputStream body = exchange.getRequestBody()) {
+                request = objectMapper.readTree(body);
+            }
+            boolean stream = request.path("stream").asBoolean(false);
+            String format = request.path("audio").path("format").asText("mp3");
+
+            sleep(latency.sample());
+
+            double roll = ThreadLocalRandom.current().nextDouble();
+            if (roll < rate429) {
+                exchange.getResponseHeaders().set("retry-after-ms", String.valueOf(retryAfterMillis));
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf((retryAfterMillis + 999) / 1000));
+                respond(exchange, 429, errorBody("429", "Requests to the ChatCompletions_Create Operation have exceeded the rate limit"));
+            } else if (roll < rate429 + rate5xx) {
+                int status = new int[]{500, 502, 503}[ThreadLocalRandom.current().nextInt(3)];
+                respond(exchange, status, errorBody(String.valueOf(status), "The server had an error while processing your request"));
+            } else if (stream) {
+                streamAudio(exchange);
+            } else {
+                respond(exchange, 200, responseBodies.computeIfAbsent(format, this::completionBody));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        responseCounts.computeIfAbsent(String.valueOf(status), k -> new AtomicLong()).incrementAndGet();
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    // Server-sent events like the real endpoint: audio deltas, then a final chunk and [DONE]
+    private void streamAudio(HttpExchange exchange) throws IOException, InterruptedException {
+        responseCounts.computeIfAbsent("200-stream", k -> new AtomicLong()).incrementAndGet();
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+
+        byte[] pcm = new byte[audioBytes & ~1];
+        int chunkLength = Math.max(2, (pcm.length / Math.max(1, streamChunks)) & ~1);
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (int offset = 0; offset < pcm.length; offset += chunkLength) {
+                if (offset > 0) {
+                    sleep(chunkIntervalMillis);
+                }
+                int length = Math.min(chunkLength, pcm.length - offset);
+                String data = Base64.getEncoder().encodeToString(Arrays.copyOfRange(pcm, offset, offset + length));
+                writeEvent(out, "{\"id\":\"chatcmpl-mock\",\"object\":\"chat.completion.chunk\",\"choices\":[{\"index\":0,"
+                        + "\"delta\":{\"audio\":{\"data\":\"" + data + "\"}},\"finish_reason\":null}]}");
+            }
+            writeEvent(out, "{\"id\":\"chatcmpl-mock\",\"object\":\"chat.completion.chunk\",\"choices\":[{\"index\":0,"
+                    + "\"delta\":{},\"finish_reason\":\"stop\"}]}");
+            writeEvent(out, "[DONE]");
+        }
+    }
+
+    private static void writeEvent(OutputStream out, String data) throws IOException {
+        out.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private byte[] completionBody(String format) {
+        String audio = Base64.getEncoder().encodeToString(silentAudio(format));
+        return ("{\"id\":\"chatcmpl-mock\",\"object\":\"chat.completion\",\"created\":" + System.currentTimeMillis() / 1000
+                + ",\"model\":\"gpt-audio\",\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":null,"
+                + "\"refusal\":null,\"audio\":{\"id\":\"audio_mock\",\"data\":\"" + audio + "\",\"expires_at\":"
+                + (System.currentTimeMillis() / 1000 + 3600) + ",\"transcript\":\"Mock transcript.\"},\"annotations\":[]},"
+                + "\"logprobs\":null,\"finish_reason\":\"stop\"}],\"usage\":{\"prompt_tokens\":100,\"completion_tokens\":900,"
+                + "\"total_tokens\":1000}}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] silentAudio(String format) {
+        if (format.equalsIgnoreCase("wav")) {
+            int dataLength = Math.max(0, audioBytes - WavHeader.SIZE) & ~1;
+            byte[] wav = new byte[WavHeader.SIZE + dataLength];
+            System.arraycopy(WavHeader.pcm16(dataLength), 0, wav, 0, WavHeader.SIZE);
+            return wav;
+        }
+        byte[] mp3 = new byte[Math.max(1, audioBytes / MP3_FRAME_LENGTH) * MP3_FRAME_LENGTH];
+        for (int offset = 0; offset < mp3.length; offset += MP3_FRAME_LENGTH) {
+            System.arraycopy(MP3_FRAME_HEADER, 0, mp3, offset, MP3_FRAME_HEADER.length);
+        }
+        return mp3;
+    }
+
+    private static byte[] errorBody(String code, String message) {
+        return ("{\"error\":{\"code\":\"" + code + "\",\"message\":\"" + message + "\"}}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void sleep(long millis) throws InterruptedException {
+        if (millis > 0) {
+            Thread.sleep(millis);
+        }
+    }
+
+    private void report() {
+        if (!responseCounts.isEmpty()) {
+            System.out.printf("in flight %d, responses %s%n", inFlight.get(), new TreeMap<>(responseCounts));
+        }
+    }
+
+    // Simulated upstream latency in milliseconds
+    public interface LatencyDistribution {
+
+        long sample();
+
+        static LatencyDistribution parse(String spec) {
+            String[] parts = spec.split(":");
+            return switch (parts[0]) {
+                case "fixed" -> fixed(Long.parseLong(parts[1]));
+                case "uniform" -> uniform(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+                case "lognormal" -> lognormal(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+                default -> throw new IllegalArgumentException("Unknown latency distribution: " + spec);
+            };
+        }
+
+        static LatencyDistribution fixed(long millis) {
+            return described(() -> millis, "fixed " + millis + " ms");
+        }
+
+        static LatencyDistribution uniform(long min, long max) {
+            return described(() -> ThreadLocalRandom.current().nextLong(min, max + 1), "uniform " + min + "-" + max + " ms");
+        }
+
+        // Long right tail like real model latency: median stays put, sigma stretches the p99
+        static LatencyDistribution lognormal(double median, double sigma) {
+            return described(() -> Math.round(median * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian())),
+                    "lognormal median " + (long) median + " ms, sigma " + sigma);
+        }
+
+        private static LatencyDistribution described(LatencyDistribution distribution, String description) {
+            return new LatencyDistribution() {
+                @Override
+                public long sample() {
+                    return distribution.sample();
+                }
+
+                @Override
+                public String toString() {
+                    return description;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.ttsapp.tts;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+// Cold start of the application as a scale-to-zero replica sees it: each run starts a fresh JVM,
+// polls /health until it answers, then sends the first request and stops the process. Reported
+// per variant, over all runs: the JVM's own "process running for" time when the context is up,
+// the time until /health first answers, the first request's own latency, and the time to first
+// response (launch to the first request's answer), which is what the first user waits for.
+//
+// Build first with mvn -Pprod,fast-startup package. Variants:
+//   plain          java -jar on the fat jar, with reflective Spring startup
+//   aot            the extracted jar with the AOT-generated initializers (-Dspring.aot.enabled=true)
+//   fast-startup   aot plus the AppCDS archive, as the Docker image runs it
+//
+// Options (all --name=value):
+//   --variants=plain,aot,fast-startup
+//   --runs=5                 measured runs per variant, taken in turn so drift hits each alike
+//   --warmup=1               unmeasured runs per variant first, to fill the page cache
+//   --target-dir=target      the build output holding the fat jar and fast-startup/
+//   --port=8090
+//   --path=/                 the first request, sent once /health answers
+//   --endpoint=http://localhost:8089   Azure OpenAI endpoint the app is given; / never calls it
+//   --timeout=120s           per run
+//   --java=PATH              defaults to this JVM, which must be the one that wrote the archive
+public class StartupBenchmark {
+
+    private static final Pattern STARTED = Pattern.compile("Started \\S+ in [0-9.]+ seconds \\(process running for ([0-9.]+)\\)");
+
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+    private final Map<String, List<String>> commands;
+    private final Path workingDirectory;
+    private final int port;
+    private final String path;
+    private final String endpoint;
+    private final Duration timeout;
+
+    public StartupBenchmark(Map<String, List<String>> commands, Path workingDirectory, int port, String path,
+                            String endpoint, Duration timeout) {
+        this.commands = commands;
+        this.workingDirectory = workingDirectory;
+        this.port = port;
+        this.path = path;
+        this.endpoint = endpoint;
+        this.timeout = timeout;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = LoadGenerator.parseOptions(args);
+        Path targetDir = Path.of(options.getOrDefault("target-dir", "target")).toAbsolutePath();
+        String java = options.getOrDefault("java", Path.of(System.getProperty("java.home"), "bin", "java").toString());
+
+        Map<String, List<String>> commands = new LinkedHashMap<>();
+        for (String variant : options.getOrDefault("variants", "plain,aot,fast-startup").split(",")) {
+            commands.put(variant.trim(), command(variant.trim(), java, targetDir));
+        }
+        StartupBenchmark benchmark = new StartupBenchmark(commands, targetDir,
+                Integer.parseInt(options.getOrDefault("port", "8090")),
+                options.getOrDefault("path", "/"),
+                options.getOrDefault("endpoint", "http://localhost:8089"),
+                LoadGenerator.parseDuration(options.getOrDefault("timeout", "120s")));
+        benchmark.run(Integer.parseInt(options.getOrDefault("warmup", "1")),
+                Integer.parseInt(options.getOrDefault("runs", "5")));
+    }
+
+    private static List<String> command(String variant, String java, Path targetDir) throws IOException {
+        Path extracted = targetDir.resolve("fast-startup");
+        List<String> command = switch (variant) {
+            case "plain" -> List.of(java, "-jar", fatJar(targetDir).toString());
+            case "aot" -> List.of(java, "-Dspring.aot.enabled=true", "-jar", extracted.resolve("app.jar").toString());
+            case "fast-startup" -> List.of(java, "-XX:SharedArchiveFile=" + extracted.resolve("application.jsa"),
+                    "-Dspring.aot.enabled=true", "-jar", extracted.resolve("app.jar").toString());
+            default -> throw new IllegalArgumentException("Unknown variant " + variant + " (plain, aot or fast-startup)");
+        };
+        for (String arg : command) {
+            if (arg.endsWith(".jar") && !Files.exists(Path.of(arg))) {
+                throw new IllegalArgumentException(arg + " not found: build with mvn -Pprod,fast-startup package");
+            }
+        }
+        if (variant.equals("fast-startup") && !Files.exists(extracted.resolve("application.jsa"))) {
+            throw new IllegalArgumentException(extracted.resolve("application.jsa") + " not found: build without -Dcds.skip=true");
+        }
+        return command;
+    }
+
+    // The repackaged jar; the one without its dependencies is left as *.jar.original
+    private static Path fatJar(Path targetDir) throws IOException {
+        try (Stream<Path> files = Files.list(targetDir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".jar"))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("No jar in " + targetDir + ": build with mvn -Pprod,fast-startup package"));
+        }
+    }
+
+    public void run(int warmup, int runs) throws Exception {
+        System.out.printf("Starting %s on port %d, %d warmup and %d measured runs each, first request GET %s%n",
+                String.join(", ", commands.keySet()), port, warmup, runs, path);
+
+        Map<String, List<Run>> results = new LinkedHashMap<>();
+        for (int i = 0; i < warmup + runs; i++) {
+            for (Map.Entry<String, List<String>> variant : commands.entrySet()) {
+                Run run = start(variant.getValue());
+                boolean measured = i >= warmup;
+                System.out.printf("  %-14s %s  started %6.0f ms  ready %6.0f ms  first request %6.0f ms  first response %6.0f ms%n",
+                        variant.getKey(), measured ? "run   " : "warmup",
+                        run.startedMillis(), run.readyMillis(), run.firstRequestMillis(), run.firstResponseMillis());
+                if (measured) {
+                    results.computeIfAbsent(variant.getKey(), k -> new ArrayList<>()).add(run);
+                }
+            }
+        }
+        report(results);
+    }
+
+    private Run start(List<String> command) throws Exception {
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .directory(workingDirectory.toFile())
+                .redirectErrorStream(true);
+        builder.environment().put("SERVER_PORT", String.valueOf(port));
+        builder.environment().put("AZURE_OPENAI_ENDPOINT", endpoint);
+        builder.environment().put("AZURE_OPENAI_AUTH", "none");
+        // The AOT-processed bean set is the prod profile's, so every variant runs that profile
+        builder.environment().put("SPRING_PROFILES_ACTIVE", "prod");
+
+        long launched = System.nanoTime();
+        Process process = builder.start();
+        OutputReader output = new OutputReader(process);
+        long ready;
+        long sent;
+        long answered;
+        try {
+            URI base = URI.create("http://localhost:" + port);
+            long deadline = launched + timeout.toNanos();
+            ready = awaitHealthy(process, base.resolve("/health"), deadline, output);
+            sent = System.nanoTime();
+            HttpResponse<Void> response = httpClient.send(HttpRequest.newBuilder(base.resolve(path)).timeout(timeout).build(),
+                    HttpResponse.BodyHandlers.discarding());
+            answered = System.nanoTime();
+            if (response.statusCode() >= 400) {
+                throw new IllegalStateException("GET " + path + " answered " + response.statusCode());
+            }
+        } finally {
+            // Graceful shutdown, as when the replica is scaled in
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+            output.join();
+        }
+        // Read once the output is drained: the "Started" line may come after /health first answers
+        return new Run(output.processRunningMillis(), (ready - launched) / 1e6, (answered - sent) / 1e6, (answered - launched) / 1e6);
+    }
+
+    private long awaitHealthy(Process process, URI health, long deadline, OutputReader output) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(health).timeout(Duration.ofSeconds(5)).build();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Application exited with " + process.exitValue() + ":\n" + output.tail());
+            }
+            try {
+                if (httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return System.nanoTime();
+                }
+            } catch (IOException e) {
+                // Not listening yet
+            }
+            Thread.sleep(10);
+        }
+        throw new IllegalStateException("No answer from " + health + " within " + timeout + ":\n" + output.tail());
+    }
+
+    private static void report(Map<String, List<Run>> results) {
+        System.out.printf("%n%-14s %-16s %10s %10s %10s%n", "variant", "ms", "min", "median", "max");
+        results.forEach((variant, runs) -> {
+            row(variant, "started", runs.stream().mapToDouble(Run::startedMillis).toArray());
+            row("", "ready", runs.stream().mapToDouble(Run::readyMillis).toArray());
+            row("", "first request", runs.stream().mapToDouble(Run::firstRequestMillis).toArray());
+            row("", "first response", runs.stream().mapToDouble(Run::firstResponseMillis).toArray());
+        });
+    }
+
+    private static void row(String variant, String measure, double[] values) {
+        Arrays.sort(values);
+        double median = values.length % 2 == 1 ? values[values.length / 2]
+                : (values[values.length / 2 - 1] + values[values.length / 2]) / 2;
+        System.out.printf("%-14s %-16s %10.0f %10.0f %10.0f%n", variant, measure, values[0], median, values[values.length - 1]);
+    }
+
+    record Run(double startedMillis, double readyMillis, double firstRequestMillis, double firstResponseMillis) {
+    }
+
+    // Drains the application's output, so it never blocks on a full pipe, keeping the last lines
+    // for errors and the JVM uptime Spring Boot logs once the context is started
+    private static final class OutputReader {
+        private final Deque<String> tail = new ArrayDeque<>();
+        private final Thread thread;
+        private volatile double processRunningMillis = Double.NaN;
+
+        OutputReader(Process process) {
+            thread = Thread.ofVirtual().name("startup-output").start(() -> {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        Matcher started = STARTED.matcher(line);
+                        if (started.find()) {
+                            processRunningMillis = Double.parseDouble(started.group(1)) * 1000;
+                        }
+                        synchronized (tail) {
+                            tail.addLast(line);
+                            if (tail.size() > 40) {
+                                tail.removeFirst();
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    // The process is gone
+                }
+            });
+        }
+
+        double processRunningMillis() {
+            return processRunningMillis;
+        }
+
+        String tail() {
+            synchronized (tail) {
+                return String.join("\n", tail);
+            }
+        }
+
+        void join() throws InterruptedException {
+            thread.join();
+        }
+    }
+}
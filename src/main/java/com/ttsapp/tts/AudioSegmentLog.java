@@ -0,0 +1,484 @@
+package com.ttsapp.tts;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+// Durable AudioStore tier: every stored clip is appended to a log of segment files on a mounted
+// volume, and an in-memory index maps each id to its record's segment and offset. The index is
+// rebuilt at startup by walking the record headers, so clips survive restarts; when the volume
+// is shared, replicas also pick up each other's segments and can serve each other's ids. Clips
+// are served from read-only mappings of the segments, never copied onto the heap.
+//
+// Each process appends only to the newest segment it created (named <writer>-<sequence>.seg) and
+// never rewrites one. Records are in store order, so retention works on whole segments: a segment
+// is deleted once its newest clip has outlived the TTL, and when the directory is over its byte
+// budget the oldest segments that no writer is still appending to go first.
+//
+// Record: magic, CRC32C of the rest of the header, stored-at millis, data length, key length,
+// format length, ETag length, then the key, format and ETag bytes and the audio itself. Removing a
+// clip appends a tombstone: a header with its own magic, the key, and nothing else, which hides
+// records of that id stored up to then from every later scan. A tombstone lasts as long as its
+// segment does.
+class AudioSegmentLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(AudioSegmentLog.class);
+
+    private static final String SUFFIX = ".seg";
+    private static final int MAGIC = 0x54545341;
+    private static final int TOMBSTONE_MAGIC = 0x54545344;
+    private static final int FIXED_HEADER_BYTES = 24;
+    // Misses look for records other replicas appended since, but at most this often
+    private static final long REFRESH_INTERVAL_NANOS = Duration.ofMillis(200).toNanos();
+
+    private final Path directory;
+    private final long budgetBytes;
+    private final long segmentBytes;
+    private final long ttlMillis;
+    private final String writerId;
+
+    // id -> where its newest record is
+    private final ConcurrentHashMap<String, Location> index = new ConcurrentHashMap<>();
+    // id -> when it was last removed, for tombstones scanned before the records they hide; kept for the TTL
+    private final ConcurrentHashMap<String, Long> removed = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Segment> segments = new ConcurrentHashMap<>();
+    private final AtomicLong nextSequence = new AtomicLong();
+    private Segment active;
+    private volatile long lastRefreshNanos;
+
+    private final Counter appendedBytes;
+    private final Counter failedAppends;
+    private final MeterRegistry meterRegistry;
+
+    AudioSegmentLog(Path directory, long budgetBytes, long segmentBytes, Duration ttl, MeterRegistry meterRegistry) {
+        this.directory = directory;
+        this.budgetBytes = budgetBytes;
+        // A segment is mapped as a whole, and a mapping can't exceed 2 GB
+        this.segmentBytes = Math.min(segmentBytes, Integer.MAX_VALUE);
+        this.ttlMillis = ttl.toMillis();
+        this.writerId = Long.toString(System.currentTimeMillis(), 36) + "-" + HexFormat.of().toHexDigits(ThreadLocalRandom.current().nextInt());
+        this.meterRegistry = meterRegistry;
+        this.appendedBytes = Counter.builder("tts.audio.durable.appended.bytes").baseUnit("bytes").register(meterRegistry);
+        this.failedAppends = Counter.builder("tts.audio.durable.append.failures").register(meterRegistry);
+
+        long started = System.nanoTime();
+        try {
+            Files.createDirectories(directory);
+            refresh();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot use durable audio directory " + directory, e);
+        }
+        logger.info("Durable audio log in {}: indexed {} clips in {} segments ({} MB) in {} ms", directory,
+                index.size(), segments.size(), totalBytes() / (1024 * 1024), (System.nanoTime() - started) / 1_000_000);
+
+        Gauge.builder("tts.audio.durable.segments", segments, Map::size).register(meterRegistry);
+    }
+
+    // Appends the clip; returns false (and the clip is only kept in memory) if it can't be written
+    boolean append(String id, StoredAudio audio) {
+        long storedAtMillis = System.currentTimeMillis();
+        ByteBuffer header = header(MAGIC, id, storedAtMillis, audio.getLength(), audio.getFormat(), audio.getEtag());
+        long recordBytes = header.capacity() + (long) audio.getLength();
+        try {
+            Location location = write(new ByteBuffer[]{header, audio.getBuffer()}, recordBytes, storedAtMillis);
+            index.put(id, location);
+            appendedBytes.increment(recordBytes);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            failedAppends.increment();
+            logger.warn("Could not append audio {} to the durable log", id, e);
+            return false;
+        }
+    }
+
+    // Appends one record to the active segment, starting a new one first if it's full or idle
+    private synchronized Location write(ByteBuffer[] record, long recordBytes, long storedAtMillis) throws IOException {
+        // A segment idle for half the TTL is started afresh, so other replicas never expire the one
+        // this process is still appending to
+        if (active == null || active.size + recordBytes > segmentBytes
+                || active.newestMillis + ttlMillis / 2 < storedAtMillis) {
+            roll();
+            // A burst of stores shouldn't have to wait for the next scheduled compaction
+            if (totalBytes() > budgetBytes) {
+                compact();
+            }
+        }
+        Segment segment = active;
+        long offset = segment.size;
+        long written = 0;
+        try {
+            while (written < recordBytes) {
+                written += segment.channel.write(record);
+            }
+        } catch (IOException e) {
+            // Part of the record may be in the file; the next append starts a new segment
+            active = null;
+            throw e;
+        }
+        segment.size = offset + recordBytes;
+        segment.scanned = segment.size;
+        segment.newestMillis = storedAtMillis;
+        return new Location(segment, offset, storedAtMillis);
+    }
+
+    private static ByteBuffer header(int magic, String id, long storedAtMillis, int dataLength, String format, String etag) {
+        byte[] keyBytes = id.getBytes(StandardCharsets.UTF_8);
+        byte[] formatBytes = format.getBytes(StandardCharsets.US_ASCII);
+        byte[] etagBytes = etag.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_BYTES + keyBytes.length + formatBytes.length + etagBytes.length);
+        header.putInt(magic).putInt(0).putLong(storedAtMillis).putInt(dataLength)
+                .putShort((short) keyBytes.length).put((byte) formatBytes.length).put((byte) etagBytes.length)
+                .put(keyBytes).put(formatBytes).put(etagBytes);
+        CRC32C crc = new CRC32C();
+        crc.update(header.array(), 8, header.capacity() - 8);
+        return header.putInt(4, (int) crc.getValue()).flip();
+    }
+
+    StoredAudio get(String id) {
+        Location location = index.get(id);
+        if (location == null && refreshDue()) {
+            try {
+                refresh();
+            } catch (IOException e) {
+                logger.warn("Could not scan durable audio directory {}", directory, e);
+            }
+            location = index.get(id);
+        }
+        if (location == null) {
+            return null;
+        }
+        try {
+            return read(location.segment, location.offset);
+        } catch (IOException | RuntimeException e) {
+            // The segment was deleted by retention on another replica, or the record is damaged
+            logger.debug("Could not read durable audio {}", id, e);
+            index.remove(id, location);
+            return null;
+        }
+    }
+
+    boolean contains(String id) {
+        Location location = index.get(id);
+        return location != null && location.segment.newestMillis + ttlMillis > System.currentTimeMillis();
+    }
+
+    // Forgets the clip here and appends a tombstone, so it stays gone after a restart and for the
+    // other replicas once they scan it
+    void remove(String id) {
+        long removedAtMillis = System.currentTimeMillis();
+        removed.merge(id, removedAtMillis, Math::max);
+        index.remove(id);
+        ByteBuffer tombstone = header(TOMBSTONE_MAGIC, id, removedAtMillis, 0, "", "");
+        try {
+            write(new ByteBuffer[]{tombstone}, tombstone.capacity(), removedAtMillis);
+            appendedBytes.increment(tombstone.capacity());
+        } catch (IOException | RuntimeException e) {
+            failedAppends.increment();
+            logger.warn("Could not append a tombstone for audio {}; it is back after a restart", id, e);
+        }
+    }
+
+    long size() {
+        return index.size();
+    }
+
+    long totalBytes() {
+        long total = 0;
+        for (Segment segment : segments.values()) {
+            total += segment.size;
+        }
+        return total;
+    }
+
+    // Deletes segments whose newest clip has expired, then the oldest sealed ones (no longer
+    // appended to by their writer) while the directory is over budget
+    synchronized void compact() {
+        try {
+            refresh();
+        } catch (IOException e) {
+            logger.warn("Could not scan durable audio directory {}", directory, e);
+        }
+        Map<String, Long> newestSequence = new HashMap<>();
+        for (Segment segment : segments.values()) {
+            newestSequence.merge(segment.writer, segment.sequence, Math::max);
+        }
+        List<Segment> oldestFirst = new ArrayList<>(segments.values());
+        oldestFirst.sort(Comparator.comparingLong(segment -> segment.newestMillis));
+
+        long now = System.currentTimeMillis();
+        // Whatever a tombstone hides has expired by now
+        removed.values().removeIf(removedAtMillis -> removedAtMillis + ttlMillis <= now);
+        long total = totalBytes();
+        for (Segment segment : oldestFirst) {
+            boolean expired = segment.newestMillis + ttlMillis <= now;
+            // Writers start a new segment rather than append to one idle for half the TTL
+            boolean sealed = segment.sequence < newestSequence.get(segment.writer)
+                    || segment.newestMillis + ttlMillis / 2 < now;
+            if (!expired && !(sealed && total > budgetBytes)) {
+                continue;
+            }
+            if (segment == active) {
+                active = null;
+            }
+            delete(segment, expired ? "expired" : "size");
+            total -= segment.size;
+        }
+    }
+
+    void close() {
+        synchronized (this) {
+            for (Segment segment : segments.values()) {
+                closeQuietly(segment);
+            }
+        }
+    }
+
+    private boolean refreshDue() {
+        long now = System.nanoTime();
+        long last = lastRefreshNanos;
+        return now - last > REFRESH_INTERVAL_NANOS;
+    }
+
+    // Indexes segment files that are new or have grown since the last look, and forgets segments
+    // another replica has deleted
+    private synchronized void refresh() throws IOException {
+        lastRefreshNanos = System.nanoTime();
+        Set<String> present = new HashSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                present.add(name);
+                Segment segment = segments.get(name);
+                if (segment == null) {
+                    try {
+                        segment = new Segment(name, file, FileChannel.open(file, StandardOpenOption.READ));
+                    } catch (NoSuchFileException e) {
+                        continue;
+                    }
+                    segments.put(name, segment);
+                }
+                if (segment != active) {
+                    scan(segment);
+                }
+            }
+        }
+        for (Segment segment : segments.values()) {
+            if (!present.contains(segment.name) && segment != active) {
+                segments.remove(segment.name);
+                index.values().removeIf(location -> location.segment == segment);
+                closeQuietly(segment);
+            }
+        }
+    }
+
+    // Walks the record headers from where the last scan stopped. A torn record at the end (a
+    // writer that crashed, or one still writing) ends the scan; the next refresh retries it.
+    private void scan(Segment segment) throws IOException {
+        long fileSize = segment.channel.size();
+        if (fileSize <= segment.scanned) {
+            return;
+        }
+        ByteBuffer mapping = segment.map(fileSize);
+        long now = System.currentTimeMillis();
+        long position = segment.scanned;
+        while (position + FIXED_HEADER_BYTES <= fileSize) {
+            Record record = Record.parse(mapping, (int) position, (int) fileSize);
+            if (record == null) {
+                break;
+            }
+            if (record.tombstone) {
+                removed.merge(record.id, record.storedAtMillis, Math::max);
+                index.computeIfPresent(record.id,
+                        (id, location) -> location.storedAtMillis <= record.storedAtMillis ? null : location);
+            } else if (record.storedAtMillis + ttlMillis > now && !isRemoved(record)) {
+                index.put(record.id, new Location(segment, position, record.storedAtMillis));
+            }
+            segment.newestMillis = Math.max(segment.newestMillis, record.storedAtMillis);
+            position = record.end;
+        }
+        segment.scanned = position;
+        segment.size = position;
+    }
+
+    private boolean isRemoved(Record record) {
+        Long removedAtMillis = removed.get(record.id);
+        return removedAtMillis != null && record.storedAtMillis <= removedAtMillis;
+    }
+
+    private StoredAudio read(Segment segment, long offset) throws IOException {
+        ByteBuffer mapping = segment.mapping();
+        Record record = mapping != null ? Record.parse(mapping, (int) offset, mapping.capacity()) : null;
+        if (record == null) {
+            // Appended after the current mapping was made
+            mapping = segment.map(segment.channel.size());
+            record = Record.parse(mapping, (int) offset, mapping.capacity());
+        }
+        if (record == null) {
+            throw new IOException("Damaged record at " + offset + " in " + segment.name);
+        }
+        long ageMillis = System.currentTimeMillis() - record.storedAtMillis;
+        if (ageMillis >= ttlMillis) {
+            return null;
+        }
+        ByteBuffer data = mapping.slice(record.dataOffset, record.dataLength);
+        return StoredAudio.mapped(data, record.format, record.etag, System.nanoTime() - ageMillis * 1_000_000);
+    }
+
+    private void roll() throws IOException {
+        if (active != null) {
+            active.channel.force(false);
+        }
+        String name = writerId + "-" + nextSequence.incrementAndGet() + SUFFIX;
+        Path file = directory.resolve(name);
+        // Appended to only by this process, so the channel's own position is always the end
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        active = new Segment(name, file, channel);
+        active.newestMillis = System.currentTimeMillis();
+        segments.put(name, active);
+        logger.debug("Started durable audio segment {}", name);
+    }
+
+    private void delete(Segment segment, String cause) {
+        segments.remove(segment.name);
+        index.values().removeIf(location -> location.segment == segment);
+        closeQuietly(segment);
+        try {
+            Files.deleteIfExists(segment.file);
+        } catch (IOException e) {
+            logger.warn("Could not delete durable audio segment {}", segment.file, e);
+        }
+        Counter.builder("tts.audio.evicted.bytes")
+                .tag("tier", "durable")
+                .tag("cause", cause)
+                .baseUnit("bytes")
+                .register(meterRegistry)
+                .increment(segment.size);
+        logger.debug("Deleted durable audio segment {} ({}, {} bytes)", segment.name, cause, segment.size);
+    }
+
+    private static void closeQuietly(Segment segment) {
+        try {
+            segment.channel.close();
+        } catch (IOException e) {
+            logger.debug("Could not close durable audio segment {}", segment.file, e);
+        }
+    }
+
+    private record Location(Segment segment, long offset, long storedAtMillis) {
+    }
+
+    private static final class Segment {
+        final String name;
+        final Path file;
+        final FileChannel channel;
+        final String writer;
+        final long sequence;
+        // Valid bytes, and how far the headers have been indexed
+        volatile long size;
+        volatile long scanned;
+        volatile long newestMillis;
+        // Read-only mapping of the file as it was when last mapped; grown on demand. Clips already
+        // handed out keep their slice of an older mapping alive, which stays valid.
+        private volatile MappedByteBuffer mapping;
+
+        Segment(String name, Path file, FileChannel channel) {
+            this.name = name;
+            this.file = file;
+            this.channel = channel;
+            // <writer>-<sequence>.seg; a file named otherwise is only ever deleted once it expires
+            int dash = name.lastIndexOf('-');
+            long parsed = Long.MAX_VALUE;
+            try {
+                parsed = Long.parseLong(name.substring(dash + 1, name.length() - SUFFIX.length()));
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                // Left at MAX_VALUE
+            }
+            this.writer = dash > 0 ? name.substring(0, dash) : name;
+            this.sequence = parsed;
+        }
+
+        ByteBuffer mapping() {
+            return mapping;
+        }
+
+        synchronized ByteBuffer map(long length) throws IOException {
+            MappedByteBuffer current = mapping;
+            if (current == null || current.capacity() < length) {
+                current = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+                mapping = current;
+            }
+            return current;
+        }
+    }
+
+    private record Record(String id, long storedAtMillis, String format, String etag, int dataOffset, int dataLength,
+                          long end, boolean tombstone) {
+
+        // Null unless a complete, intact record (or tombstone) starts at position
+        static Record parse(ByteBuffer mapping, int position, int limit) {
+            if (position + FIXED_HEADER_BYTES > limit) {
+                return null;
+            }
+            int magic = mapping.getInt(position);
+            if (magic != MAGIC && magic != TOMBSTONE_MAGIC) {
+                return null;
+            }
+            int checksum = mapping.getInt(position + 4);
+            long storedAtMillis = mapping.getLong(position + 8);
+            int dataLength = mapping.getInt(position + 16);
+            int keyLength = mapping.getShort(position + 20) & 0xffff;
+            int formatLength = mapping.get(position + 22) & 0xff;
+            int etagLength = mapping.get(position + 23) & 0xff;
+            int headerEnd = position + FIXED_HEADER_BYTES + keyLength + formatLength + etagLength;
+            long end = (long) headerEnd + dataLength;
+            if (dataLength < 0 || end > limit) {
+                return null;
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(mapping.slice(position + 8, headerEnd - position - 8));
+            if ((int) crc.getValue() != checksum) {
+                return null;
+            }
+            int at = position + FIXED_HEADER_BYTES;
+            String id = string(mapping, at, keyLength, StandardCharsets.UTF_8);
+            String format = string(mapping, at + keyLength, formatLength, StandardCharsets.US_ASCII);
+            String etag = string(mapping, at + keyLength + formatLength, etagLength, StandardCharsets.US_ASCII);
+            return new Record(id, storedAtMillis, format, etag, headerEnd, dataLength, end, magic == TOMBSTONE_MAGIC);
+        }
+
+        private static String string(ByteBuffer mapping, int position, int length, Charset charset) {
+            byte[] bytes = new byte[length];
+            mapping.get(position, bytes);
+            return new String(bytes, charset);
+        }
+    }
+}
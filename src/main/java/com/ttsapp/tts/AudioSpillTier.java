@@ -0,0 +1,149 @@
+package com.ttsapp.tts;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Second AudioStore tier: clips pushed out of the heap are written to one file each under a local
+// directory and served from a read-only memory mapping, so the page cache holds them instead of
+// the Java heap. Bounded by its own byte budget, and entries keep the TTL they had on the heap.
+class AudioSpillTier {
+
+    private static final Logger logger = LoggerFactory.getLogger(AudioSpillTier.class);
+    private static final String SUFFIX = ".audio";
+
+    private final Path directory;
+    private final Cache<String, SpilledEntry> entries;
+    // Every spill gets its own file name, so deleting an expired file can never hit a newer spill of the same id
+    private final AtomicLong fileSequence = new AtomicLong();
+
+    private final Counter spilledBytes;
+
+    AudioSpillTier(Path directory, long budgetBytes, Duration ttl, MeterRegistry meterRegistry) {
+        this.directory = directory;
+        this.spilledBytes = Counter.builder("tts.audio.spilled.bytes").baseUnit("bytes").register(meterRegistry);
+        try {
+            Files.createDirectories(directory);
+            clearDirectory(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot use audio spill directory " + directory, e);
+        }
+
+        long ttlNanos = ttl.toNanos();
+        this.entries = Caffeine.newBuilder()
+                .maximumWeight(budgetBytes)
+                .weigher((String id, SpilledEntry entry) -> entry.audio.getLength())
+                .expireAfter(new Expiry<String, SpilledEntry>() {
+                    @Override
+                    public long expireAfterCreate(String id, SpilledEntry entry, long currentTime) {
+                        return Math.max(0, ttlNanos - (currentTime - entry.audio.getStoredAtNanos()));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String id, SpilledEntry entry, long currentTime, long currentDuration) {
+                        return expireAfterCreate(id, entry, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String id, SpilledEntry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .removalListener((String id, SpilledEntry entry, RemovalCause cause) -> {
+                    if (entry != null) {
+                        deleteQuietly(entry.file);
+                        if (cause.wasEvicted()) {
+                            Counter.builder("tts.audio.evicted.bytes")
+                                    .tag("tier", "disk")
+                                    .tag("cause", cause.name().toLowerCase())
+                                    .baseUnit("bytes")
+                                    .register(meterRegistry)
+                                    .increment(entry.audio.getLength());
+                        }
+                    }
+                })
+                .build();
+    }
+
+    // Writes the clip out and keeps it as a mapping; returns null if it could not be spilled
+    StoredAudio spill(String id, StoredAudio audio) {
+        Path file = directory.resolve(fileSequence.incrementAndGet() + SUFFIX);
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer source = audio.getBuffer();
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+            // The mapping stays valid after the channel is closed (and, on Linux, after the file is deleted)
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, audio.getLength());
+            StoredAudio spilled = audio.spilledTo(mapped);
+            entries.put(id, new SpilledEntry(spilled, file));
+            spilledBytes.increment(audio.getLength());
+            logger.debug("Spilled audio {} to disk, size: {} bytes", id, audio.getLength());
+            return spilled;
+        } catch (IOException e) {
+            logger.warn("Could not spill audio {} to {}, dropping it", id, file, e);
+            deleteQuietly(file);
+            return null;
+        }
+    }
+
+    StoredAudio get(String id) {
+        SpilledEntry entry = entries.getIfPresent(id);
+        return entry != null ? entry.audio : null;
+    }
+
+    void remove(String id) {
+        entries.invalidate(id);
+    }
+
+    long size() {
+        return entries.estimatedSize();
+    }
+
+    long weightedSize() {
+        return entries.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L);
+    }
+
+    void clear() {
+        entries.invalidateAll();
+        entries.cleanUp();
+    }
+
+    private static void clearDirectory(Path directory) throws IOException {
+        // Spilled clips don't outlive the process; anything left over is from a previous run
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path leftover : leftovers) {
+                deleteQuietly(leftover);
+            }
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.debug("Could not delete spill file {}", file, e);
+        }
+    }
+
+    private record SpilledEntry(StoredAudio audio, Path file) {
+    }
+}
@@ -0,0 +1,295 @@
+package com.ttsapp.tts;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+// Joins separately synthesized clips into one valid file of the same format
+public final class AudioStitcher {
+
+    private AudioStitcher() {
+    }
+
+    public static byte[] stitch(String format, List<byte[]> parts) {
+        if (parts.isEmpty()) {
+            throw new IllegalArgumentException("Nothing to stitch");
+        }
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        return switch (format.toLowerCase()) {
+            case "wav" -> stitchWav(parts);
+            case "opus" -> stitchOgg(parts);
+            default -> stitchMp3(parts);
+        };
+    }
+
+    // ---- WAV: concatenate the data chunks under one header with the combined length ----
+
+    static byte[] stitchWav(List<byte[]> parts) {
+        byte[] fmtChunk = null;
+        int[] dataStart = new int[parts.size()];
+        int[] dataLength = new int[parts.size()];
+        long totalData = 0;
+
+        for (int i = 0; i < parts.size(); i++) {
+            byte[] part = parts.get(i);
+            ByteBuffer wav = ByteBuffer.wrap(part).order(ByteOrder.LITTLE_ENDIAN);
+            if (part.length < 12 || wav.getInt(0) != 0x46464952 || wav.getInt(8) != 0x45564157) {
+                throw new IllegalArgumentException("Not a RIFF/WAVE clip");
+            }
+
+            int position = 12;
+            while (position + 8 <= part.length) {
+                int chunkId = wav.getInt(position);
+                long chunkLength = Integer.toUnsignedLong(wav.getInt(position + 4));
+                int bodyStart = position + 8;
+
+                if (chunkId == 0x20746d66) { // "fmt "
+                    byte[] chunk = Arrays.copyOfRange(part, position, bodyStart + (int) chunkLength);
+                    if (fmtChunk == null) {
+                        fmtChunk = chunk;
+                    } else if (!Arrays.equals(fmtChunk, chunk)) {
+                        throw new IllegalArgumentException("WAV clips have different sample formats");
+                    }
+                } else if (chunkId == 0x61746164) { // "data"
+                    // Streamed WAVs use 0 or 0xFFFFFFFF for "until end of file"
+                    int available = part.length - bodyStart;
+                    dataStart[i] = bodyStart;
+                    dataLength[i] = chunkLength == 0 || chunkLength > available ? available : (int) chunkLength;
+                    totalData += dataLength[i];
+                    break;
+                }
+                position = bodyStart + (int) chunkLength + (int) (chunkLength & 1);
+            }
+        }
+
+        if (fmtChunk == null) {
+            throw new IllegalArgumentException("WAV clip has no fmt chunk");
+        }
+
+        int headerLength = 12 + fmtChunk.length + 8;
+        ByteBuffer out = ByteBuffer.allocate(Math.toIntExact(headerLength + totalData)).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(0x46464952); // "RIFF"
+        out.putInt((int) (4 + fmtChunk.length + 8 + totalData));
+        out.putInt(0x45564157); // "WAVE"
+        out.put(fmtChunk);
+        out.putInt(0x61746164); // "data"
+        out.putInt((int) totalData);
+        for (int i = 0; i < parts.size(); i++) {
+            out.put(parts.get(i), dataStart[i], dataLength[i]);
+        }
+        return out.array();
+    }
+
+    // ---- MP3: keep only the audio frames of every clip ----
+
+    private static final int[][] MP3_BITRATES = {
+            // MPEG-1 Layer III
+            {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 0},
+            // MPEG-2/2.5 Layer III
+            {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160, 0}
+    };
+    private static final int[][] MP3_SAMPLE_RATES = {
+            {44100, 48000, 32000}, // MPEG-1
+            {22050, 24000, 16000}, // MPEG-2
+            {11025, 12000, 8000}   // MPEG-2.5
+    };
+
+    // ID3 tags are dropped, and so is each clip's Xing/Info frame, whose frame count and seek
+    // table describe only that clip; players fall back to the frame headers, which stay accurate
+    static byte[] stitchMp3(List<byte[]> parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(totalLength(parts));
+
+        for (byte[] part : parts) {
+            int start = skipId3v2(part);
+            int end = part.length;
+            if (end - start >= 128 && part[end - 128] == 'T' && part[end - 127] == 'A' && part[end - 126] == 'G') {
+                end -= 128;
+            }
+
+            int position = start;
+            boolean firstFrame = true;
+            while (position + 4 <= end) {
+                int frameLength = mp3FrameLength(part, position);
+                if (frameLength <= 0) {
+                    // Not on a frame boundary (junk or a truncated frame); resync byte by byte
+                    position++;
+                    continue;
+                }
+                int frameEnd = Math.min(end, position + frameLength);
+                if (!(firstFrame && isXingFrame(part, position, frameEnd))) {
+                    out.write(part, position, frameEnd - position);
+                }
+                firstFrame = false;
+                position = frameEnd;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static int skipId3v2(byte[] part) {
+        if (part.length >= 10 && part[0] == 'I' && part[1] == 'D' && part[2] == '3') {
+            int size = ((part[6] & 0x7f) << 21) | ((part[7] & 0x7f) << 14) | ((part[8] & 0x7f) << 7) | (part[9] & 0x7f);
+            boolean footer = (part[5] & 0x10) != 0;
+            return Math.min(part.length, 10 + size + (footer ? 10 : 0));
+        }
+        return 0;
+    }
+
+    static int mp3FrameLength(byte[] data, int offset) {
+        int b1 = data[offset] & 0xff;
+        int b2 = data[offset + 1] & 0xff;
+        int b3 = data[offset + 2] & 0xff;
+        if (b1 != 0xff || (b2 & 0xe0) != 0xe0) {
+            return -1;
+        }
+        int version = (b2 >> 3) & 0x3;  // 0 = 2.5, 2 = 2, 3 = 1
+        int layer = (b2 >> 1) & 0x3;    // 1 = Layer III
+        int bitrateIndex = (b3 >> 4) & 0xf;
+        int sampleRateIndex = (b3 >> 2) & 0x3;
+        int padding = (b3 >> 1) & 0x1;
+        if (version == 1 || layer != 1 || bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3) {
+            return -1;
+        }
+
+        boolean mpeg1 = version == 3;
+        int bitrate = MP3_BITRATES[mpeg1 ? 0 : 1][bitrateIndex] * 1000;
+        int sampleRate = MP3_SAMPLE_RATES[mpeg1 ? 0 : (version == 2 ? 1 : 2)][sampleRateIndex];
+        return (mpeg1 ? 144 : 72) * bitrate / sampleRate + padding;
+    }
+
+    private static boolean isXingFrame(byte[] data, int frameStart, int frameEnd) {
+        // The tag sits right after the side information, whose size depends on version and channels
+        boolean mpeg1 = ((data[frameStart + 1] >> 3) & 0x3) == 3;
+        boolean mono = ((data[frameStart + 3] >> 6) & 0x3) == 3;
+        int offset = frameStart + 4 + (mpeg1 ? (mono ? 17 : 32) : (mono ? 9 : 17));
+        if (offset + 4 > frameEnd) {
+            return false;
+        }
+        return (data[offset] == 'X' && data[offset + 1] == 'i' && data[offset + 2] == 'n' && data[offset + 3] == 'g')
+                || (data[offset] == 'I' && data[offset + 1] == 'n' && data[offset + 2] == 'f' && data[offset + 3] == 'o');
+    }
+
+    // ---- Ogg Opus: one logical stream with the headers of the first clip ----
+
+    // Pages of later clips drop their OpusHead/OpusTags packets and are rewritten into the first
+    // clip's stream: same serial number, continuous page sequence numbers, granule positions
+    // offset by the samples already written, and BOS/EOS only at the very start and end.
+    // Later clips' pre-skip samples are played rather than trimmed (a few ms of decoder warm-up).
+    static byte[] stitchOgg(List<byte[]> parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(totalLength(parts));
+        int serial = -1;
+        int sequence = 0;
+        long granuleOffset = 0;
+        long lastGranule = 0;
+        byte[] pendingLast = null;
+
+        for (int partIndex = 0; partIndex < parts.size(); partIndex++) {
+            byte[] part = parts.get(partIndex);
+            ByteBuffer pages = ByteBuffer.wrap(part).order(ByteOrder.LITTLE_ENDIAN);
+            int position = 0;
+            int headerPackets = 0;
+            long partGranule = 0;
+
+            while (position + 27 <= part.length) {
+                if (pages.getInt(position) != 0x5367674f) { // "OggS"
+                    throw new IllegalArgumentException("Not an Ogg clip");
+                }
+                int segments = part[position + 26] & 0xff;
+                int bodyLength = 0;
+                int packetsEnded = 0;
+                for (int i = 0; i < segments; i++) {
+                    int lacing = part[position + 27 + i] & 0xff;
+                    bodyLength += lacing;
+                    if (lacing < 255) {
+                        packetsEnded++;
+                    }
+                }
+                int pageLength = 27 + segments + bodyLength;
+                if (position + pageLength > part.length) {
+                    throw new IllegalArgumentException("Truncated Ogg page");
+                }
+
+                // The first two packets of every Opus stream are OpusHead and OpusTags
+                boolean headerPage = headerPackets < 2;
+                headerPackets += packetsEnded;
+
+                if (serial == -1) {
+                    serial = pages.getInt(position + 14);
+                }
+
+                if (!headerPage || partIndex == 0) {
+                    byte[] copy = new byte[pageLength];
+                    System.arraycopy(part, position, copy, 0, pageLength);
+                    ByteBuffer rewritten = ByteBuffer.wrap(copy).order(ByteOrder.LITTLE_ENDIAN);
+
+                    long granule = rewritten.getLong(6);
+                    if (granule != -1) {
+                        partGranule = granule;
+                        lastGranule = granuleOffset + granule;
+                        rewritten.putLong(6, lastGranule);
+                    }
+                    int flags = copy[5] & 0xff;
+                    if (partIndex > 0) {
+                        flags &= ~0x02; // BOS
+                    }
+                    flags &= ~0x04;     // EOS, set again on the final page below
+                    copy[5] = (byte) flags;
+                    rewritten.putInt(14, serial);
+                    rewritten.putInt(18, sequence++);
+
+                    if (pendingLast != null) {
+                        writeOggPage(out, pendingLast);
+                    }
+                    pendingLast = copy;
+                }
+                position += pageLength;
+            }
+            granuleOffset += partGranule;
+        }
+
+        if (pendingLast != null) {
+            pendingLast[5] = (byte) (pendingLast[5] | 0x04);
+            writeOggPage(out, pendingLast);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeOggPage(ByteArrayOutputStream out, byte[] page) {
+        ByteBuffer buffer = ByteBuffer.wrap(page).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(22, 0);
+        buffer.putInt(22, oggCrc(page));
+        out.write(page, 0, page.length);
+    }
+
+    private static final int[] OGG_CRC_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 24;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x80000000) != 0 ? (crc << 1) ^ 0x04c11db7 : crc << 1;
+            }
+            OGG_CRC_TABLE[i] = crc;
+        }
+    }
+
+    private static int oggCrc(byte[] page) {
+        int crc = 0;
+        for (byte b : page) {
+            crc = (crc << 8) ^ OGG_CRC_TABLE[((crc >>> 24) ^ (b & 0xff)) & 0xff];
+        }
+        return crc;
+    }
+
+    private static int totalLength(List<byte[]> parts) {
+        long total = 0;
+        for (byte[] part : parts) {
+            total += part.length;
+        }
+        return (int) Math.min(Integer.MAX_VALUE - 8, total);
+    }
+}
@@ -2,40 +2,305 @@ package com.ttsapp.tts;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+// Two tiers: a heap tier bounded by bytes rather than entry count (where PCM WAV is kept
+// losslessly compacted, at a fraction of its size), and a memory-mapped spill
+// tier on local disk that catches whatever the heap tier evicts for size. Readers never see
+// which tier a clip came from. Next to them, a small pinned tier holds clips that are worth
+// keeping regardless of traffic (pre-synthesized vibe scripts); it has its own byte budget and
+// is never evicted or expired. Optionally, every clip is also written through to a durable
+// segment log on a mounted volume, which outlives restarts and takes the place of the spill tier.
 @Service
 public class AudioStore {
 
     private static final Logger logger = LoggerFactory.getLogger(AudioStore.class);
-    
-    private final Cache<String, byte[]> audioCache;
 
-    public AudioStore() {
+    // Rough per-entry cost of the key, node and StoredAudio on top of the audio bytes
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+    // Under memory pressure the heap budget is halved, but never below this
+    private static final long MIN_HEAP_BUDGET_BYTES = 4L * 1024 * 1024;
+    // How long the heap has to stay quiet before the budget is allowed to grow back
+    private static final long PRESSURE_RECOVERY_NANOS = TimeUnit.MINUTES.toNanos(1);
+    // How often expired and over-budget durable segments are deleted
+    private static final long COMPACTION_INTERVAL_SECONDS = 60;
+
+    private final Cache<String, StoredAudio> audioCache;
+    private final ConcurrentHashMap<String, StoredAudio> pinned = new ConcurrentHashMap<>();
+    private final long pinnedBudget;
+    private final AtomicLong pinnedBytes = new AtomicLong();
+    private final AudioSpillTier spillTier;
+    private final AudioSegmentLog durableLog;
+    private final ScheduledExecutorService compactor;
+    private final Duration ttl;
+    private final Duration durableTtl;
+    private final long heapBudget;
+    private final boolean compactWav;
+    private volatile long currentHeapBudget;
+    private volatile long lastPressureNanos;
+    private final NotificationListener pressureListener = this::onMemoryNotification;
+
+    private final Timer putTimer;
+    private final Timer pinnedHitTimer;
+    private final Timer heapHitTimer;
+    private final Timer diskHitTimer;
+    private final Timer durableHitTimer;
+    private final Timer missTimer;
+    private final Counter storedBytes;
+    private final Counter compactedSavedBytes;
+    private final MeterRegistry meterRegistry;
+
+    public AudioStore(
+            @Value("${app.audio-store.heap-budget:64MB}") DataSize heapBudget,
+            @Value("${app.audio-store.disk-budget:1GB}") DataSize diskBudget,
+            @Value("${app.audio-store.spill-directory:}") String spillDirectory,
+            @Value("${app.audio-store.ttl:10m}") Duration ttl,
+            @Value("${app.audio-store.heap-pressure-threshold:0.8}") double heapPressureThreshold,
+            @Value("${app.audio-store.pinned-budget:64MB}") DataSize pinnedBudget,
+            @Value("${app.audio-store.compact-wav:true}") boolean compactWav,
+            @Value("${app.audio-store.durable-directory:}") String durableDirectory,
+            @Value("${app.audio-store.durable-budget:10GB}") DataSize durableBudget,
+            @Value("${app.audio-store.durable-ttl:24h}") Duration durableTtl,
+            @Value("${app.audio-store.durable-segment-size:64MB}") DataSize durableSegmentSize,
+            MeterRegistry meterRegistry) {
+        this.ttl = ttl;
+        this.durableTtl = durableTtl;
+        this.pinnedBudget = pinnedBudget.toBytes();
+        this.meterRegistry = meterRegistry;
+        this.putTimer = Timer.builder("tts.audio.store.put").register(meterRegistry);
+        this.pinnedHitTimer = Timer.builder("tts.audio.store.get").tag("result", "pinned").register(meterRegistry);
+        this.heapHitTimer = Timer.builder("tts.audio.store.get").tag("result", "heap").register(meterRegistry);
+        this.diskHitTimer = Timer.builder("tts.audio.store.get").tag("result", "disk").register(meterRegistry);
+        this.durableHitTimer = Timer.builder("tts.audio.store.get").tag("result", "durable").register(meterRegistry);
+        this.missTimer = Timer.builder("tts.audio.store.get").tag("result", "miss").register(meterRegistry);
+        this.storedBytes = Counter.builder("tts.audio.stored.bytes").baseUnit("bytes").register(meterRegistry);
+        this.heapBudget = heapBudget.toBytes();
+        this.currentHeapBudget = this.heapBudget;
+        this.compactWav = compactWav;
+        this.compactedSavedBytes = Counter.builder("tts.audio.compacted.saved.bytes")
+                .description("Heap bytes saved by keeping PCM WAV clips compacted")
+                .baseUnit("bytes").register(meterRegistry);
+
+        if (!durableDirectory.isBlank()) {
+            this.durableLog = new AudioSegmentLog(Path.of(durableDirectory), durableBudget.toBytes(),
+                    durableSegmentSize.toBytes(), durableTtl, meterRegistry);
+            this.compactor = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("audio-log-compactor").factory());
+            this.compactor.scheduleWithFixedDelay(this::compactDurableLog, COMPACTION_INTERVAL_SECONDS,
+                    COMPACTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        } else {
+            this.durableLog = null;
+            this.compactor = null;
+        }
+
+        // Whatever the heap evicts is already in the durable log, so with one there is nothing to spill
+        Path spillPath = spillDirectory.isBlank()
+                ? Path.of(System.getProperty("java.io.tmpdir"), "tts-audio-spill")
+                : Path.of(spillDirectory);
+        this.spillTier = diskBudget.toBytes() > 0 && durableLog == null
+                ? new AudioSpillTier(spillPath, diskBudget.toBytes(), ttl, meterRegistry) : null;
+
         this.audioCache = Caffeine.newBuilder()
-                .maximumSize(1000)
-                .expireAfterWrite(Duration.ofMinutes(10))
+                .maximumWeight(this.heapBudget)
+                .weigher((String id, StoredAudio audio) -> audio.getFootprint() + ENTRY_OVERHEAD_BYTES)
+                .expireAfterWrite(ttl)
+                // Runs as part of the eviction, so a clip is on disk before it is gone from the heap map
+                .evictionListener((String id, StoredAudio audio, RemovalCause cause) -> {
+                    if (cause == RemovalCause.SIZE && spillTier != null && id != null && audio != null) {
+                        spillTier.spill(id, audio);
+                    }
+                })
+                .removalListener((String id, StoredAudio audio, RemovalCause cause) -> {
+                    if (cause.wasEvicted() && audio != null) {
+                        evictedBytes("heap", cause).increment(audio.getLength());
+                    }
+                })
                 .build();
-        
-        logger.info("Audio store initialized with 10-minute TTL");
+
+        Gauge.builder("tts.audio.store.bytes", this, AudioStore::getHeapBytes)
+                .tag("tier", "heap").baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("tts.audio.store.bytes", this, AudioStore::getSpilledBytes)
+                .tag("tier", "disk").baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("tts.audio.store.bytes", pinnedBytes, AtomicLong::get)
+                .tag("tier", "pinned").baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("tts.audio.store.bytes", this, AudioStore::getDurableBytes)
+                .tag("tier", "durable").baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("tts.audio.store.budget", this, AudioStore::getHeapBudget)
+                .tag("tier", "heap").baseUnit("bytes").register(meterRegistry);
+
+        registerPressureListener(heapPressureThreshold);
+
+        logger.info("Audio store initialized with {}-minute TTL, {} MB heap budget, {}",
+                ttl.toMinutes(), this.heapBudget / (1024 * 1024),
+                durableLog != null ? durableBudget.toMegabytes() + " MB durable log in " + durableDirectory + " kept for " + durableTtl
+                        : spillTier != null ? diskBudget.toMegabytes() + " MB spill tier in " + spillPath : "no spill tier");
+    }
+
+    public String store(byte[] audioData, String format) {
+        return store(ByteBuffer.wrap(audioData), format);
     }
 
-    public String store(byte[] audioData) {
+    // The audio is the buffer's remaining bytes; a heap buffer's array is kept, not copied
+    public String store(ByteBuffer audioData, String format) {
+        long start = System.nanoTime();
         String id = UUID.randomUUID().toString();
-        audioCache.put(id, audioData);
-        logger.debug("Stored audio with ID: {}, size: {} bytes", id, audioData.length);
+        relaxBudgetIfRecovered();
+        StoredAudio audio = newAudio(audioData, format);
+        audioCache.put(id, audio);
+        if (durableLog != null) {
+            durableLog.append(id, audio);
+        }
+        storedBytes.increment(audio.getLength());
+        putTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        logger.debug("Stored audio with ID: {}, size: {} bytes", id, audio.getLength());
         return id;
     }
 
-    public byte[] retrieve(String id) {
-        byte[] audioData = audioCache.getIfPresent(id);
+    // Content-addressed store: identical audio is kept once under its synthesis key, and a
+    // concurrent or repeated store for the same key returns the copy that is already cached
+    public String store(String key, byte[] audioData, String format) {
+        return store(key, ByteBuffer.wrap(audioData), format);
+    }
+
+    public String store(String key, ByteBuffer audioData, String format) {
+        long start = System.nanoTime();
+        relaxBudgetIfRecovered();
+        StoredAudio existing = pinned.get(key);
+        if (existing == null && spillTier != null) {
+            existing = spillTier.get(key);
+        }
+        if (existing == null && durableLog != null && durableLog.contains(key)) {
+            logger.debug("Audio already stored durably under key: {}", key);
+            putTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return key;
+        }
+        StoredAudio audio = null;
+        if (existing == null) {
+            audio = newAudio(audioData, format);
+            existing = audioCache.asMap().putIfAbsent(key, audio);
+        }
+        if (existing != null) {
+            logger.debug("Audio already stored under key: {}, size: {} bytes", key, existing.getLength());
+        } else {
+            if (durableLog != null) {
+                durableLog.append(key, audio);
+            }
+            storedBytes.increment(audio.getLength());
+            logger.debug("Stored audio under key: {}, size: {} bytes", key, audio.getLength());
+        }
+        putTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return key;
+    }
+
+    // Keeps the clip under its key in the pinned tier, outside eviction and expiry, and drops any
+    // copy from the other tiers. Returns false if the pinned budget has no room for it.
+    public boolean pin(String key, byte[] audioData, String format) {
+        if (pinned.containsKey(key)) {
+            return true;
+        }
+        return pinAudio(key, newAudio(ByteBuffer.wrap(audioData), format));
+    }
+
+    // Pins a clip looked up from the store: heap and compacted clips are pinned as they are, mapped
+    // ones are read onto the heap, as their file can be deleted
+    public boolean pin(String key, StoredAudio audio) {
+        if (pinned.containsKey(key)) {
+            return true;
+        }
+        return pinAudio(key, audio.isSpilled() ? newAudio(ByteBuffer.wrap(audio.getData()), audio.getFormat()) : audio);
+    }
+
+    private boolean pinAudio(String key, StoredAudio audio) {
+        long length = audio.getFootprint();
+        long total;
+        do {
+            total = pinnedBytes.get();
+            if (total + length > pinnedBudget) {
+                return false;
+            }
+        } while (!pinnedBytes.compareAndSet(total, total + length));
+        if (pinned.putIfAbsent(key, audio) != null) {
+            pinnedBytes.addAndGet(-length);
+            return true;
+        }
+        audioCache.invalidate(key);
+        if (spillTier != null) {
+            spillTier.remove(key);
+        }
+        logger.debug("Pinned audio under key: {}, size: {} bytes", key, length);
+        return true;
+    }
+
+    public boolean isPinned(String key) {
+        return pinned.containsKey(key);
+    }
+
+    // Drops pinned clips whose keys are not in the set (vibes that were removed or changed)
+    public void retainPinned(Set<String> keys) {
+        pinned.entrySet().removeIf(entry -> {
+            if (keys.contains(entry.getKey())) {
+                return false;
+            }
+            pinnedBytes.addAndGet(-entry.getValue().getFootprint());
+            return true;
+        });
+    }
+
+    // Like retrieve, but a miss is an expected outcome (cache probe) rather than a warning
+    public StoredAudio lookup(String id) {
+        long start = System.nanoTime();
+        StoredAudio audio = pinned.get(id);
+        if (audio != null) {
+            pinnedHitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return audio;
+        }
+        audio = audioCache.getIfPresent(id);
+        if (audio != null) {
+            heapHitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return audio;
+        }
+        audio = spillTier != null ? spillTier.get(id) : null;
+        if (audio != null) {
+            diskHitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return audio;
+        }
+        audio = durableLog != null ? durableLog.get(id) : null;
+        (audio != null ? durableHitTimer : missTimer).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return audio;
+    }
+
+    public StoredAudio retrieve(String id) {
+        StoredAudio audioData = lookup(id);
         if (audioData != null) {
-            logger.debug("Retrieved audio with ID: {}, size: {} bytes", id, audioData.length);
+            logger.debug("Retrieved audio with ID: {}, size: {} bytes, spilled: {}", id, audioData.getLength(), audioData.isSpilled());
         } else {
             logger.warn("Audio not found for ID: {}", id);
         }
@@ -44,10 +309,157 @@ public class AudioStore {
 
     public void remove(String id) {
         audioCache.invalidate(id);
+        if (spillTier != null) {
+            spillTier.remove(id);
+        }
+        if (durableLog != null) {
+            durableLog.remove(id);
+        }
         logger.debug("Removed audio with ID: {}", id);
     }
 
     public long size() {
-        return audioCache.estimatedSize();
+        // Every clip on the heap is in the durable log as well
+        if (durableLog != null) {
+            return durableLog.size() + pinned.size();
+        }
+        return audioCache.estimatedSize() + getSpilledCount() + pinned.size();
+    }
+
+    // How long a clip stays in memory after it was stored
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    // How long a clip stays retrievable after it was stored
+    public Duration getRetention() {
+        return durableLog != null && durableTtl.compareTo(ttl) > 0 ? durableTtl : ttl;
+    }
+
+    public long getHeapBytes() {
+        return audioCache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L);
+    }
+
+    public long getHeapBudget() {
+        return currentHeapBudget;
+    }
+
+    public long getPinnedCount() {
+        return pinned.size();
+    }
+
+    public long getPinnedBytes() {
+        return pinnedBytes.get();
+    }
+
+    public long getSpilledCount() {
+        return spillTier != null ? spillTier.size() : 0;
+    }
+
+    public long getSpilledBytes() {
+        return spillTier != null ? spillTier.weightedSize() : 0;
+    }
+
+    public long getDurableCount() {
+        return durableLog != null ? durableLog.size() : 0;
+    }
+
+    public long getDurableBytes() {
+        return durableLog != null ? durableLog.totalBytes() : 0;
+    }
+
+    private void compactDurableLog() {
+        try {
+            durableLog.compact();
+        } catch (RuntimeException e) {
+            logger.warn("Durable audio log compaction failed", e);
+        }
+    }
+
+    private StoredAudio newAudio(ByteBuffer audioData, String format) {
+        if (!compactWav) {
+            return new StoredAudio(audioData, format);
+        }
+        StoredAudio audio = StoredAudio.compacted(audioData, format);
+        if (audio.isCompacted()) {
+            compactedSavedBytes.increment(audio.getLength() - audio.getFootprint());
+        }
+        return audio;
+    }
+
+    private Counter evictedBytes(String tier, RemovalCause cause) {
+        return Counter.builder("tts.audio.evicted.bytes")
+                .tag("tier", tier)
+                .tag("cause", cause.name().toLowerCase())
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    // Ask to be told when the old generation is still above the threshold right after a GC,
+    // which is the signal that live data (and not just garbage) is crowding the heap
+    private void registerPressureListener(double threshold) {
+        if (threshold <= 0 || threshold >= 1) {
+            return;
+        }
+        boolean watching = false;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            long max = pool.getUsage().getMax();
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && max > 0) {
+                pool.setCollectionUsageThreshold((long) (max * threshold));
+                watching = true;
+            }
+        }
+        if (watching) {
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean())
+                    .addNotificationListener(pressureListener, null, null);
+        }
+    }
+
+    private void onMemoryNotification(Notification notification, Object handback) {
+        if (!MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+            return;
+        }
+        lastPressureNanos = System.nanoTime();
+        long shrunk = Math.max(MIN_HEAP_BUDGET_BYTES, currentHeapBudget / 2);
+        if (shrunk < currentHeapBudget) {
+            logger.warn("Heap pressure after GC, shrinking audio heap budget from {} MB to {} MB",
+                    currentHeapBudget / (1024 * 1024), shrunk / (1024 * 1024));
+            setHeapBudget(shrunk);
+        }
+    }
+
+    // Doubles the budget back toward its configured size once the heap has been quiet for a while
+    private void relaxBudgetIfRecovered() {
+        long budget = currentHeapBudget;
+        if (budget < heapBudget && System.nanoTime() - lastPressureNanos > PRESSURE_RECOVERY_NANOS) {
+            lastPressureNanos = System.nanoTime();
+            long grown = Math.min(heapBudget, budget * 2);
+            logger.info("Heap pressure has eased, growing audio heap budget to {} MB", grown / (1024 * 1024));
+            setHeapBudget(grown);
+        }
+    }
+
+    private synchronized void setHeapBudget(long budget) {
+        currentHeapBudget = budget;
+        // Lowering the maximum evicts (and so spills) right away
+        audioCache.policy().eviction().ifPresent(eviction -> eviction.setMaximum(budget));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        try {
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(pressureListener);
+        } catch (ListenerNotFoundException e) {
+            // Never registered
+        }
+        if (spillTier != null) {
+            // Finish any eviction still in flight first, or it could spill a clip after the clear
+            audioCache.cleanUp();
+            spillTier.clear();
+        }
+        if (durableLog != null) {
+            compactor.shutdownNow();
+            durableLog.close();
+        }
     }
 }
@@ -0,0 +1,155 @@
+package com.ttsapp.tts;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Component
+@ConfigurationProperties(prefix = "azure.openai")
+public class AzureOpenAIProperties {
+
+    // The single endpoint used when no endpoints list is configured
+    private String endpoint;
+    private String deployment = "gpt-audio";
+    // Part of every synthesis cache key, so all endpoints must serve the same model
+    private String model = "gpt-audio";
+    // Access tokens are refreshed in the background this long before they expire
+    private Duration tokenRefreshMargin = Duration.ofMinutes(5);
+    // "managed-identity", or "none" to send unauthenticated requests (only for a local mock server)
+    private String auth = "managed-identity";
+    private String scope = "https://cognitiveservices.azure.com/.default";
+    // Several deployments (possibly in different regions) to spread requests over; when set,
+    // endpoint above is only the default for entries that leave it out
+    private List<Endpoint> endpoints = new ArrayList<>();
+    // How long an endpoint that answered 429 without Retry-After gets no new requests
+    private Duration ejectDuration = Duration.ofSeconds(10);
+    // Upper bound on an ejection, whatever Retry-After asked for
+    private Duration maxEjectDuration = Duration.ofMinutes(1);
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public String getDeployment() {
+        return deployment;
+    }
+
+    public void setDeployment(String deployment) {
+        this.deployment = deployment;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    public Duration getTokenRefreshMargin() {
+        return tokenRefreshMargin;
+    }
+
+    public void setTokenRefreshMargin(Duration tokenRefreshMargin) {
+        this.tokenRefreshMargin = tokenRefreshMargin;
+    }
+
+    public String getAuth() {
+        return auth;
+    }
+
+    public void setAuth(String auth) {
+        this.auth = auth;
+    }
+
+    public String getScope() {
+        return scope;
+    }
+
+    public void setScope(String scope) {
+        this.scope = scope;
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    public void setEndpoints(List<Endpoint> endpoints) {
+        this.endpoints = endpoints;
+    }
+
+    public Duration getEjectDuration() {
+        return ejectDuration;
+    }
+
+    public void setEjectDuration(Duration ejectDuration) {
+        this.ejectDuration = ejectDuration;
+    }
+
+    public Duration getMaxEjectDuration() {
+        return maxEjectDuration;
+    }
+
+    public void setMaxEjectDuration(Duration maxEjectDuration) {
+        this.maxEjectDuration = maxEjectDuration;
+    }
+
+    // Unset fields fall back to the top-level values
+    public static class Endpoint {
+
+        // Used in logs and as the endpoint tag on metrics; defaults to the endpoint's host
+        private String name;
+        private String endpoint;
+        // Sent as the request's model, which is how the v1 API picks the deployment; defaults to model
+        private String deployment;
+        private String auth;
+        private String scope;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        public void setEndpoint(String endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        public String getDeployment() {
+            return deployment;
+        }
+
+        public void setDeployment(String deployment) {
+            this.deployment = deployment;
+        }
+
+        public String getAuth() {
+            return auth;
+        }
+
+        public void setAuth(String auth) {
+            this.auth = auth;
+        }
+
+        public String getScope() {
+            return scope;
+        }
+
+        public void setScope(String scope) {
+            this.scope = scope;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.ttsapp.tts;
+
+import com.azure.core.credential.AccessToken;
+import com.azure.core.credential.TokenCredential;
+import com.azure.core.credential.TokenRequestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Caches the access token for one scope and refreshes it in the background ahead of expiry,
+// so request threads only ever block on the credential before the first token arrives or
+// after refreshes have been failing long enough for the cached token to expire
+public class AzureTokenProvider implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(AzureTokenProvider.class);
+
+    // A token this close to expiry is treated as expired, so it can't lapse in flight
+    private static final Duration EXPIRY_SKEW = Duration.ofSeconds(30);
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(10);
+    private static final Duration ACQUIRE_TIMEOUT = Duration.ofSeconds(30);
+
+    private final TokenCredential credential;
+    private final TokenRequestContext requestContext;
+    private final Duration refreshMargin;
+    private final Clock clock;
+    private final ScheduledExecutorService scheduler;
+
+    private volatile AccessToken current;
+    private volatile OffsetDateTime refreshDueAt;
+    private ScheduledFuture<?> nextRefresh;
+    // Non-null while a refresh is running; everyone who needs a token joins that one refresh
+    private final AtomicReference<CompletableFuture<AccessToken>> refreshInFlight = new AtomicReference<>();
+
+    public AzureTokenProvider(TokenCredential credential, String scope, Duration refreshMargin) {
+        this(credential, scope, refreshMargin, Clock.systemUTC());
+    }
+
+    public AzureTokenProvider(TokenCredential credential, String scope, Duration refreshMargin, Clock clock) {
+        this.credential = credential;
+        this.requestContext = new TokenRequestContext().addScopes(scope);
+        this.refreshMargin = refreshMargin;
+        this.clock = clock;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "token-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Starts fetching the first token without waiting for it
+    public void prefetch() {
+        refresh();
+    }
+
+    public AccessToken getToken() {
+        AccessToken token = current;
+        OffsetDateTime now = OffsetDateTime.now(clock);
+
+        if (token != null && now.isBefore(token.getExpiresAt().minus(EXPIRY_SKEW))) {
+            // Still usable; if the scheduled refresh hasn't happened yet, nudge it along
+            OffsetDateTime dueAt = refreshDueAt;
+            if (dueAt != null && !now.isBefore(dueAt)) {
+                refresh();
+            }
+            return token;
+        }
+
+        try {
+            AccessToken refreshed = refresh().get(ACQUIRE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            if (refreshed == null) {
+                throw new RuntimeException("Failed to obtain access token from managed identity");
+            }
+            return refreshed;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while obtaining access token", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to obtain access token from managed identity", e.getCause());
+        } catch (TimeoutException e) {
+            throw new RuntimeException("Timed out obtaining access token from managed identity", e);
+        }
+    }
+
+    CompletableFuture<AccessToken> refresh() {
+        while (true) {
+            CompletableFuture<AccessToken> existing = refreshInFlight.get();
+            if (existing != null) {
+                return existing;
+            }
+
+            CompletableFuture<AccessToken> refresh = new CompletableFuture<>();
+            if (refreshInFlight.compareAndSet(null, refresh)) {
+                startRefresh(refresh);
+                return refresh;
+            }
+        }
+    }
+
+    private void startRefresh(CompletableFuture<AccessToken> refresh) {
+        logger.debug("Refreshing access token");
+        CompletableFuture<AccessToken> request;
+        try {
+            request = credential.getToken(requestContext).toFuture();
+        } catch (RuntimeException e) {
+            request = CompletableFuture.failedFuture(e);
+        }
+        request.whenComplete((token, error) -> {
+            if (error == null && token != null) {
+                scheduleRefresh(token);
+                current = token;
+                logger.debug("Access token refreshed, expires at {}", token.getExpiresAt());
+            } else {
+                logger.warn("Access token refresh failed, retrying in {}s", RETRY_DELAY.toSeconds(), error);
+                // Also holds off getToken's nudge, which would otherwise retry on every request
+                refreshDueAt = OffsetDateTime.now(clock).plus(RETRY_DELAY);
+                scheduleAfter(RETRY_DELAY);
+            }
+
+            refreshInFlight.compareAndSet(refresh, null);
+            if (error != null) {
+                refresh.completeExceptionally(error);
+            } else {
+                refresh.complete(token);
+            }
+        });
+    }
+
+    private void scheduleRefresh(AccessToken token) {
+        Duration lifetime = Duration.between(OffsetDateTime.now(clock), token.getExpiresAt());
+        // Short-lived tokens are refreshed at half-life rather than never getting ahead of expiry
+        Duration margin = refreshMargin.compareTo(lifetime.dividedBy(2)) > 0 ? lifetime.dividedBy(2) : refreshMargin;
+        refreshDueAt = token.getExpiresAt().minus(margin);
+        scheduleAfter(lifetime.minus(margin));
+    }
+
+    // Only one refresh is ever scheduled; an on-demand refresh replaces the pending one
+    private synchronized void scheduleAfter(Duration delay) {
+        if (nextRefresh != null) {
+            nextRefresh.cancel(false);
+        }
+        try {
+            nextRefresh = scheduler.schedule(this::refresh, Math.max(0, delay.toMillis()), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
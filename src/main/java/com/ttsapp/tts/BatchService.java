@@ -0,0 +1,282 @@
+package com.ttsapp.tts;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// Runs a batch of syntheses as one job, a few items at a time, so a content team can submit
+// hundreds of clips in one request instead of scripting them one by one. Each item goes through
+// SynthesisService like a single request (cache, coalescing, long-text chunking, bulkhead).
+// Jobs are kept as long as their audio is.
+@Service
+public class BatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchService.class);
+
+    private final SynthesisService synthesisService;
+    private final AudioStore audioStore;
+    private final int concurrency;
+    private final int maxItems;
+    private final Cache<String, BatchJob> jobs;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final Counter succeededItems;
+    private final Counter failedItems;
+
+    public BatchService(SynthesisService synthesisService, AudioStore audioStore,
+                        @Value("${app.batch.concurrency:4}") int concurrency,
+                        @Value("${app.batch.max-items:100}") int maxItems,
+                        MeterRegistry meterRegistry) {
+        this.synthesisService = synthesisService;
+        this.audioStore = audioStore;
+        this.concurrency = Math.max(1, concurrency);
+        this.maxItems = maxItems;
+        this.jobs = Caffeine.newBuilder()
+                .expireAfterWrite(audioStore.getRetention())
+                .build();
+        this.succeededItems = Counter.builder("tts.batch.items").tag("result", "succeeded").register(meterRegistry);
+        this.failedItems = Counter.builder("tts.batch.items").tag("result", "failed").register(meterRegistry);
+
+        logger.info("Batch service initialized with up to {} items per batch, {} at a time", maxItems, this.concurrency);
+    }
+
+    public int getMaxItems() {
+        return maxItems;
+    }
+
+    // Items must already be validated; the job starts right away and runs in the background
+    public BatchJob submit(String clientIdentifier, List<ItemRequest> requests) {
+        BatchJob job = new BatchJob(UUID.randomUUID().toString(), clientIdentifier, requests);
+        jobs.put(job.jobId, job);
+        executor.execute(() -> run(job));
+        logger.info("Started batch job {} for client {}: {} items", job.jobId, clientIdentifier, job.items.size());
+        return job;
+    }
+
+    public BatchJob getJob(String jobId) {
+        return jobs.getIfPresent(jobId);
+    }
+
+    private void run(BatchJob job) {
+        Semaphore slots = new Semaphore(concurrency);
+        for (BatchItem item : job.items) {
+            try {
+                slots.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                item.fail("Batch was cancelled");
+                jobs.put(job.jobId, job);
+                continue;
+            }
+            executor.execute(() -> {
+                try {
+                    runItem(job, item);
+                } finally {
+                    slots.release();
+                    // Re-put as each item finishes, so a batch that runs longer than the retention
+                    // is not dropped mid-run, and a finished one is kept as long as its audio
+                    jobs.put(job.jobId, job);
+                }
+            });
+        }
+    }
+
+    private void runItem(BatchJob job, BatchItem item) {
+        item.status = ItemStatus.RUNNING;
+        try {
+            SynthesisService.SynthesisResult result = synthesisService.synthesize(
+                    item.request.text(), item.request.voice(), item.request.style(), item.request.format());
+            item.succeed(result);
+            succeededItems.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            item.fail("Batch was cancelled");
+            failedItems.increment();
+        } catch (Exception e) {
+            logger.warn("Batch job {} item {} failed: {}", job.jobId, item.index, e.getMessage());
+            item.fail(e instanceof UpstreamBusyException ? "Service is busy" : "Failed to generate voice: " + e.getMessage());
+            failedItems.increment();
+        }
+    }
+
+    // Streams a ZIP of the job's clips in item order, writing each one as soon as it is done, so
+    // the download can start while later items are still being synthesized. Failed items are
+    // listed in errors.txt at the end.
+    public void writeZip(BatchJob job, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        StringBuilder errors = new StringBuilder();
+        for (BatchItem item : job.items) {
+            item.awaitCompletion();
+            StoredAudio audio = item.status == ItemStatus.SUCCEEDED ? audioStore.lookup(item.audioId) : null;
+            if (audio != null) {
+                writeEntry(zip, item.fileName(), audio);
+            } else {
+                errors.append(item.fileName()).append(": ")
+                        .append(item.status == ItemStatus.SUCCEEDED ? "audio has expired" : item.error).append('\n');
+            }
+        }
+        if (!errors.isEmpty()) {
+            ZipEntry entry = new ZipEntry("errors.txt");
+            zip.putNextEntry(entry);
+            zip.write(errors.toString().getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        zip.finish();
+        zip.flush();
+    }
+
+    private static void writeEntry(ZipOutputStream zip, String name, StoredAudio audio) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        // MP3 and Opus are already compressed; deflating them costs CPU for nothing
+        if (!audio.getFormat().equalsIgnoreCase("wav")) {
+            CRC32 crc = new CRC32();
+            ByteBuffer data = audio.getBuffer();
+            crc.update(data);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(audio.getLength());
+            entry.setCompressedSize(audio.getLength());
+            entry.setCrc(crc.getValue());
+        }
+        zip.putNextEntry(entry);
+        audio.writeTo(zip);
+        zip.closeEntry();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public enum ItemStatus {
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED
+    }
+
+    public record BatchRequest(List<ItemRequest> items) {
+    }
+
+    public record ItemRequest(String text, String voice, String style, String format) {
+    }
+
+    public static class BatchJob {
+        public final String jobId;
+        public final String clientIdentifier;
+        public final List<BatchItem> items;
+
+        BatchJob(String jobId, String clientIdentifier, List<ItemRequest> requests) {
+            this.jobId = jobId;
+            this.clientIdentifier = clientIdentifier;
+            List<BatchItem> items = new ArrayList<>(requests.size());
+            for (int i = 0; i < requests.size(); i++) {
+                items.add(new BatchItem(i, requests.get(i)));
+            }
+            this.items = Collections.unmodifiableList(items);
+        }
+
+        public boolean isDone() {
+            return items.stream().allMatch(BatchItem::isDone);
+        }
+
+        public long count(ItemStatus status) {
+            return items.stream().filter(item -> item.status == status).count();
+        }
+    }
+
+    public static class BatchItem {
+        public final int index;
+        final ItemRequest request;
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+        private volatile ItemStatus status = ItemStatus.QUEUED;
+        private volatile String audioId;
+        private volatile int size;
+        private volatile boolean cached;
+        private volatile String error;
+
+        BatchItem(int index, ItemRequest request) {
+            this.index = index;
+            this.request = request;
+        }
+
+        public ItemStatus getStatus() {
+            return status;
+        }
+
+        public String getFormat() {
+            return request.format();
+        }
+
+        public String getAudioId() {
+            return audioId;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public boolean isCached() {
+            return cached;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public boolean isDone() {
+            return completion.isDone();
+        }
+
+        String fileName() {
+            return String.format("%03d-%s.%s", index + 1, request.voice(), request.format());
+        }
+
+        void succeed(SynthesisService.SynthesisResult result) {
+            audioId = result.audioId;
+            size = result.size;
+            cached = result.cached;
+            status = ItemStatus.SUCCEEDED;
+            completion.complete(null);
+        }
+
+        void fail(String message) {
+            error = message;
+            status = ItemStatus.FAILED;
+            completion.complete(null);
+        }
+
+        void awaitCompletion() throws IOException {
+            try {
+                completion.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for batch item " + index, e);
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.ttsapp.tts;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// A 16-bit PCM WAV clip held losslessly in a fraction of its size. The header is kept as it is;
+// the samples are cut into fixed-size blocks, each delta-coded (speech changes slowly from one
+// sample to the next, so the deltas are small), split into a low-byte and a high-byte plane and
+// deflated. Blocks are independent, so the clip is decoded one block at a time as it is written
+// out, and a range request only decodes the blocks it covers. Decoding gives back the exact
+// original bytes.
+final class CompactWav {
+
+    // PCM bytes per block: big enough for deflate to find its patterns, small enough to decode per read
+    static final int BLOCK_BYTES = 64 * 1024;
+    // Clips that don't shrink below this share of their size are kept as they are
+    private static final double MAX_RATIO = 0.9;
+
+    private final byte[] header;
+    private final byte[] blocks;
+    // Start of each block in blocks, plus the end of the last one
+    private final int[] blockOffsets;
+    private final int pcmLength;
+    // A trailing odd byte after the samples, if any
+    private final byte[] tail;
+
+    private CompactWav(byte[] header, byte[] blocks, int[] blockOffsets, int pcmLength, byte[] tail) {
+        this.header = header;
+        this.blocks = blocks;
+        this.blockOffsets = blockOffsets;
+        this.pcmLength = pcmLength;
+        this.tail = tail;
+    }
+
+    static CompactWav encode(byte[] wav) {
+        return encode(wav, wav.length);
+    }
+
+    // The clip is the first length bytes of wav. Null if it isn't 16-bit PCM WAV, or doesn't
+    // compress well enough to be worth it.
+    static CompactWav encode(byte[] wav, int length) {
+        int dataOffset = pcm16DataOffset(wav, length);
+        if (dataOffset < 0) {
+            return null;
+        }
+        // Everything after the header is treated as samples: streamed clips carry placeholder lengths
+        int pcmLength = (length - dataOffset) & ~1;
+        int blockCount = (pcmLength + BLOCK_BYTES - 1) / BLOCK_BYTES;
+        int[] blockOffsets = new int[blockCount + 1];
+        ByteArrayOutputStream out = new ByteArrayOutputStream(pcmLength / 2);
+        byte[] planes = new byte[BLOCK_BYTES];
+        byte[] deflated = new byte[BLOCK_BYTES + 1024];
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            for (int block = 0; block < blockCount; block++) {
+                int start = dataOffset + block * BLOCK_BYTES;
+                int blockLength = Math.min(BLOCK_BYTES, dataOffset + pcmLength - start);
+                toPlanes(wav, start, blockLength, planes);
+                deflater.reset();
+                deflater.setInput(planes, 0, blockLength);
+                deflater.finish();
+                while (!deflater.finished()) {
+                    out.write(deflated, 0, deflater.deflate(deflated));
+                }
+                blockOffsets[block + 1] = out.size();
+            }
+        } finally {
+            deflater.end();
+        }
+        if (dataOffset + out.size() > length * MAX_RATIO) {
+            return null;
+        }
+        return new CompactWav(Arrays.copyOf(wav, dataOffset), out.toByteArray(), blockOffsets, pcmLength,
+                Arrays.copyOfRange(wav, dataOffset + pcmLength, length));
+    }
+
+    int length() {
+        return header.length + pcmLength + tail.length;
+    }
+
+    // Heap bytes held for the clip
+    int footprint() {
+        return header.length + blocks.length + blockOffsets.length * Integer.BYTES + tail.length;
+    }
+
+    byte[] decode() {
+        byte[] wav = new byte[length()];
+        try (InputStream in = newInputStream()) {
+            in.readNBytes(wav, 0, wav.length);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot decode compact WAV", e);
+        }
+        return wav;
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        try (InputStream in = newInputStream()) {
+            in.transferTo(out);
+        }
+    }
+
+    InputStream newInputStream() {
+        return new DecodingInputStream();
+    }
+
+    // Offset of the samples, or -1 unless the RIFF chunks describe 16-bit integer PCM
+    private static int pcm16DataOffset(byte[] wav, int length) {
+        if (length < WavHeader.SIZE) {
+            return -1;
+        }
+        ByteBuffer riff = ByteBuffer.wrap(wav).order(ByteOrder.LITTLE_ENDIAN);
+        if (riff.getInt(0) != 0x46464952 || riff.getInt(8) != 0x45564157) { // "RIFF", "WAVE"
+            return -1;
+        }
+        boolean pcm16 = false;
+        int position = 12;
+        while (position + 8 <= length) {
+            int id = riff.getInt(position);
+            long size = Integer.toUnsignedLong(riff.getInt(position + 4));
+            if (id == 0x61746164) { // "data"
+                return pcm16 ? position + 8 : -1;
+            }
+            if (id == 0x20746d66 && size >= 16 && position + 24 <= length) { // "fmt "
+                pcm16 = riff.getShort(position + 8) == 1 && riff.getShort(position + 22) == 16;
+            }
+            position += 8 + (int) Math.min(size + (size & 1), length);
+        }
+        return -1;
+    }
+
+    // Deltas of successive little-endian samples, low bytes in the first half, high bytes in the second
+    private static void toPlanes(byte[] wav, int start, int length, byte[] planes) {
+        int samples = length / 2;
+        short previous = 0;
+        for (int i = 0; i < samples; i++) {
+            short sample = (short) ((wav[start + 2 * i] & 0xff) | (wav[start + 2 * i + 1] << 8));
+            short delta = (short) (sample - previous);
+            planes[i] = (byte) delta;
+            planes[samples + i] = (byte) (delta >> 8);
+            previous = sample;
+        }
+    }
+
+    private static void fromPlanes(byte[] planes, int length, byte[] pcm) {
+        int samples = length / 2;
+        short previous = 0;
+        for (int i = 0; i < samples; i++) {
+            short sample = (short) (previous + (short) ((planes[i] & 0xff) | (planes[samples + i] << 8)));
+            pcm[2 * i] = (byte) sample;
+            pcm[2 * i + 1] = (byte) (sample >> 8);
+            previous = sample;
+        }
+    }
+
+    // Decodes a block at a time, and only the blocks actually read: skip just moves the position
+    private final class DecodingInputStream extends InputStream {
+        private final Inflater inflater = new Inflater();
+        private final byte[] planes = new byte[BLOCK_BYTES];
+        private final byte[] pcm = new byte[BLOCK_BYTES];
+        private int decodedBlock = -1;
+        private long position;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == 1 ? one[0] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            long remaining = length() - position;
+            if (remaining <= 0) {
+                return -1;
+            }
+            int count;
+            int at = (int) position;
+            if (at < header.length) {
+                count = Math.min(len, header.length - at);
+                System.arraycopy(header, at, b, off, count);
+            } else if (at < header.length + pcmLength) {
+                int pcmPosition = at - header.length;
+                int block = pcmPosition / BLOCK_BYTES;
+                int blockLength = decode(block);
+                int within = pcmPosition - block * BLOCK_BYTES;
+                count = Math.min(len, blockLength - within);
+                System.arraycopy(pcm, within, b, off, count);
+            } else {
+                int tailPosition = at - header.length - pcmLength;
+                count = Math.min(len, tail.length - tailPosition);
+                System.arraycopy(tail, tailPosition, b, off, count);
+            }
+            position += count;
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, length() - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, length() - position);
+        }
+
+        @Override
+        public void close() {
+            inflater.end();
+        }
+
+        private int decode(int block) throws IOException {
+            int length = Math.min(BLOCK_BYTES, pcmLength - block * BLOCK_BYTES);
+            if (block == decodedBlock) {
+                return length;
+            }
+            inflater.reset();
+            inflater.setInput(blocks, blockOffsets[block], blockOffsets[block + 1] - blockOffsets[block]);
+            try {
+                int inflated = 0;
+                while (inflated < length && !inflater.finished()) {
+                    inflated += inflater.inflate(planes, inflated, length - inflated);
+                }
+                if (inflated != length) {
+                    throw new IOException("Compact WAV block " + block + " decoded to " + inflated + " of " + length + " bytes");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt compact WAV block " + block, e);
+            }
+            fromPlanes(planes, length, pcm);
+            decodedBlock = block;
+            return length;
+        }
+    }
+}
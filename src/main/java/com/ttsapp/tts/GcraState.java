@@ -0,0 +1,143 @@
+package com.ttsapp.tts;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// GCRA (virtual-scheduling token bucket) state for all three rate limits, packed into one long so
+// a check is a single compare-and-set that never locks and never allocates.
+//
+// Layout, 16 bits each, high to low:
+//   [last update tick][per-minute request debt][per-hour request debt][per-hour character debt]
+// A debt is how far the client is ahead of its allowed rate, in units of 1/SCALE of its window:
+// SCALE means the full limit has just been used, and it drains back to 0 over one window.
+final class GcraState {
+
+    static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    static final long MINUTE_TICKS = 600;
+    static final long HOUR_TICKS = 36_000;
+    // 0xFFFF is never a valid debt, which keeps RETIRED (all ones) distinguishable from any state
+    static final long SCALE = 0xFFFE;
+    // Marks a state that has been dropped from its map; anyone still holding it starts over
+    static final long RETIRED = -1L;
+
+    static final int ALLOWED = 0;
+    static final int MINUTE_EXCEEDED = 1;
+    static final int HOURLY_REQUESTS_EXCEEDED = 2;
+    static final int HOURLY_CHARACTERS_EXCEEDED = 3;
+    static final int STATE_RETIRED = -1;
+
+    private static final long FIELD_MASK = 0xFFFF;
+    private static final int TICK_SHIFT = 48;
+    private static final int MINUTE_SHIFT = 32;
+    private static final int HOUR_REQUESTS_SHIFT = 16;
+    private static final int HOUR_CHARACTERS_SHIFT = 0;
+
+    private GcraState() {
+    }
+
+    // Charges the three costs if they all fit, otherwise leaves the state untouched and reports the
+    // first limit that would be exceeded
+    static int tryCharge(AtomicLong state, long minuteCost, long hourlyRequestCost, long hourlyCharacterCost) {
+        while (true) {
+            long current = state.get();
+            if (current == RETIRED) {
+                return STATE_RETIRED;
+            }
+
+            long now = currentTick();
+            long elapsed = elapsedTicks(current, now);
+            long minuteDebt = drain(minuteDebt(current), elapsed, MINUTE_TICKS);
+            long hourlyRequestDebt = drain(hourlyRequestDebt(current), elapsed, HOUR_TICKS);
+            long hourlyCharacterDebt = drain(hourlyCharacterDebt(current), elapsed, HOUR_TICKS);
+
+            if (minuteDebt + minuteCost > SCALE) {
+                return MINUTE_EXCEEDED;
+            }
+            if (hourlyRequestDebt + hourlyRequestCost > SCALE) {
+                return HOURLY_REQUESTS_EXCEEDED;
+            }
+            if (hourlyCharacterDebt + hourlyCharacterCost > SCALE) {
+                return HOURLY_CHARACTERS_EXCEEDED;
+            }
+
+            long next = pack(now, minuteDebt + minuteCost, hourlyRequestDebt + hourlyRequestCost,
+                    hourlyCharacterDebt + hourlyCharacterCost);
+            if (state.compareAndSet(current, next)) {
+                return ALLOWED;
+            }
+            // Lost a race with another request from the same client; re-evaluate against its update
+        }
+    }
+
+    // The state as it stands now, with every debt drained by the time since its last update
+    static long drainedToNow(long state) {
+        if (state == RETIRED) {
+            return 0;
+        }
+        long now = currentTick();
+        long elapsed = elapsedTicks(state, now);
+        return pack(now,
+                drain(minuteDebt(state), elapsed, MINUTE_TICKS),
+                drain(hourlyRequestDebt(state), elapsed, HOUR_TICKS),
+                drain(hourlyCharacterDebt(state), elapsed, HOUR_TICKS));
+    }
+
+    static boolean isDrained(long state) {
+        return (drainedToNow(state) & ~(FIELD_MASK << TICK_SHIFT)) == 0;
+    }
+
+    static long currentTick() {
+        return (System.nanoTime() / TICK_NANOS) & FIELD_MASK;
+    }
+
+    // Debts above SCALE (possible in a shared store that several replicas charge) are capped
+    static long pack(long tick, long minuteDebt, long hourlyRequestDebt, long hourlyCharacterDebt) {
+        return (tick << TICK_SHIFT)
+                | (Math.min(SCALE, minuteDebt) << MINUTE_SHIFT)
+                | (Math.min(SCALE, hourlyRequestDebt) << HOUR_REQUESTS_SHIFT)
+                | (Math.min(SCALE, hourlyCharacterDebt) << HOUR_CHARACTERS_SHIFT);
+    }
+
+    static long minuteDebt(long state) {
+        return (state >>> MINUTE_SHIFT) & FIELD_MASK;
+    }
+
+    static long hourlyRequestDebt(long state) {
+        return (state >>> HOUR_REQUESTS_SHIFT) & FIELD_MASK;
+    }
+
+    static long hourlyCharacterDebt(long state) {
+        return (state >>> HOUR_CHARACTERS_SHIFT) & FIELD_MASK;
+    }
+
+    // The 16-bit tick wraps after ~109 minutes; a state idle for an hour has fully drained, and
+    // stores drop drained states well before their timestamp could become ambiguous
+    private static long elapsedTicks(long state, long now) {
+        return (now - ((state >>> TICK_SHIFT) & FIELD_MASK)) & FIELD_MASK;
+    }
+
+    // Debt left after the elapsed ticks, at a drain rate of SCALE per window. Rounds the drain down,
+    // which only ever errs on the strict side.
+    private static long drain(long debt, long elapsedTicks, long windowTicks) {
+        return Math.max(0, debt - elapsedTicks * SCALE / windowTicks);
+    }
+
+    // Share of the window that `amount` out of `limit` uses up. A limit of 0 blocks everything.
+    static long cost(long amount, int limit) {
+        if (amount <= 0) {
+            return 0;
+        }
+        if (limit <= 0) {
+            return SCALE + 1;
+        }
+        return Math.max(1, amount * SCALE / limit);
+    }
+
+    // Debt converted back to requests or characters in the current window
+    static int usage(long debt, int limit) {
+        if (limit <= 0) {
+            return 0;
+        }
+        return (int) ((debt * limit + SCALE - 1) / SCALE);
+    }
+}
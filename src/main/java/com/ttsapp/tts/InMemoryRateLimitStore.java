@@ -0,0 +1,70 @@
+package com.ttsapp.tts;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Per-JVM store: one AtomicLong per client. With several replicas each one enforces the limits
+// on its own, so a client's effective limit grows with the replica count.
+public class InMemoryRateLimitStore implements RateLimitStore, AutoCloseable {
+
+    private static final Limit[] LIMITS = {null, Limit.MINUTE_REQUESTS, Limit.HOURLY_REQUESTS, Limit.HOURLY_CHARACTERS};
+
+    private final Map<String, AtomicLong> states = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper;
+
+    public InMemoryRateLimitStore() {
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-limit-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sweeper.scheduleWithFixedDelay(this::sweep, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public Limit tryAcquire(String clientIdentifier, long minuteCost, long hourlyRequestCost, long hourlyCharacterCost) {
+        while (true) {
+            AtomicLong state = states.get(clientIdentifier);
+            if (state == null) {
+                state = states.computeIfAbsent(clientIdentifier, k -> new AtomicLong(0));
+            }
+            int outcome = GcraState.tryCharge(state, minuteCost, hourlyRequestCost, hourlyCharacterCost);
+            if (outcome != GcraState.STATE_RETIRED) {
+                return LIMITS[outcome];
+            }
+            states.remove(clientIdentifier, state);
+        }
+    }
+
+    @Override
+    public long usage(String clientIdentifier) {
+        AtomicLong state = states.get(clientIdentifier);
+        return state != null ? GcraState.drainedToNow(state.get()) : 0;
+    }
+
+    @Override
+    public int trackedClients() {
+        return states.size();
+    }
+
+    // Drops clients whose usage has fully drained; they are indistinguishable from new ones
+    void sweep() {
+        states.forEach((clientIdentifier, state) -> {
+            long current = state.get();
+            // Retire first so a concurrent update either lands before (and the CAS fails) or sees RETIRED
+            if (current == GcraState.RETIRED
+                    || (GcraState.isDrained(current) && state.compareAndSet(current, GcraState.RETIRED))) {
+                states.remove(clientIdentifier, state);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+    }
+}
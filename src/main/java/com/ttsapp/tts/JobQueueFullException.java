@@ -0,0 +1,23 @@
+package com.ttsapp.tts;
+
+// Thrown when a job can't be queued because the backlog (overall or the client's own) is full
+public class JobQueueFullException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+    // Whether only this client's backlog is full, rather than the whole queue
+    private final boolean clientLimit;
+
+    public JobQueueFullException(String message, long retryAfterSeconds, boolean clientLimit) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.clientLimit = clientLimit;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    public boolean isClientLimit() {
+        return clientLimit;
+    }
+}
@@ -0,0 +1,60 @@
+package com.ttsapp.tts;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Component
+@ConfigurationProperties(prefix = "app.job-queue")
+public class JobQueueProperties {
+
+    // Jobs synthesized at once; they share the upstream bulkhead with synchronous requests
+    private int workers = 8;
+    private int maxQueued = 500;
+    private int maxQueuedPerClient = 50;
+    // Jobs a client gets in a row on its round-robin turn, unless listed in clientWeights
+    private int defaultWeight = 1;
+    private Map<String, Integer> clientWeights = new HashMap<>();
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    public void setMaxQueued(int maxQueued) {
+        this.maxQueued = maxQueued;
+    }
+
+    public int getMaxQueuedPerClient() {
+        return maxQueuedPerClient;
+    }
+
+    public void setMaxQueuedPerClient(int maxQueuedPerClient) {
+        this.maxQueuedPerClient = maxQueuedPerClient;
+    }
+
+    public int getDefaultWeight() {
+        return defaultWeight;
+    }
+
+    public void setDefaultWeight(int defaultWeight) {
+        this.defaultWeight = defaultWeight;
+    }
+
+    public Map<String, Integer> getClientWeights() {
+        return clientWeights;
+    }
+
+    public void setClientWeights(Map<String, Integer> clientWeights) {
+        this.clientWeights = clientWeights;
+    }
+}
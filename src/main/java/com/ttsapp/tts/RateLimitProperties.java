@@ -3,6 +3,8 @@ package com.ttsapp.tts;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+
 @Component
 @ConfigurationProperties(prefix = "app.rate-limit")
 public class RateLimitProperties {
@@ -11,6 +13,9 @@ public class RateLimitProperties {
     private int maxRequestsPerHour = 100;
     private int maxCharactersPerHour = 50000;
     private boolean enabled = true;
+    // "memory" keeps usage per JVM; "redis" shares it between replicas
+    private String store = "memory";
+    private final Redis redis = new Redis();
 
     public int getMaxRequestsPerMinute() {
         return maxRequestsPerMinute;
@@ -43,4 +48,57 @@ public class RateLimitProperties {
     public void setEnabled(boolean enabled) {
         this.enabled = enabled;
     }
+
+    public String getStore() {
+        return store;
+    }
+
+    public void setStore(String store) {
+        this.store = store;
+    }
+
+    public Redis getRedis() {
+        return redis;
+    }
+
+    public static class Redis {
+
+        private String uri = "redis://localhost:6379";
+        private String keyPrefix = "tts:rate-limit:";
+        // Usage is charged locally and pushed to Redis in one pipelined batch this often
+        private Duration flushInterval = Duration.ofMillis(100);
+        private Duration timeout = Duration.ofSeconds(2);
+
+        public String getUri() {
+            return uri;
+        }
+
+        public void setUri(String uri) {
+            this.uri = uri;
+        }
+
+        public String getKeyPrefix() {
+            return keyPrefix;
+        }
+
+        public void setKeyPrefix(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+        }
+
+        public Duration getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(Duration flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+
+        public Duration getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+    }
 }
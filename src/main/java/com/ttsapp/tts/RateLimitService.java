@@ -1,43 +1,41 @@
 package com.ttsapp.tts;
 
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
-import java.time.Duration;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
 
+// Sliding-window limits per client (see GcraState): usage drains continuously instead of
+// resetting at fixed window edges, and a rejected request charges nothing. The state itself
+// lives in a RateLimitStore, which is per-JVM or shared between replicas.
 @Service
 public class RateLimitService {
 
     private static final Logger logger = LoggerFactory.getLogger(RateLimitService.class);
 
     private final RateLimitProperties rateLimitProperties;
+    private final RateLimitStore store;
+    private final Map<RateLimitStore.Limit, Counter> rejections = new EnumMap<>(RateLimitStore.Limit.class);
 
-    // Caches for tracking usage
-    private final Cache<String, AtomicInteger> minuteCache;
-    private final Cache<String, AtomicInteger> hourlyRequestCache;
-    private final Cache<String, AtomicInteger> hourlyCharacterCache;
-
-    public RateLimitService(RateLimitProperties rateLimitProperties) {
+    public RateLimitService(RateLimitProperties rateLimitProperties, RateLimitStore store, MeterRegistry meterRegistry) {
         this.rateLimitProperties = rateLimitProperties;
-        
-        this.minuteCache = Caffeine.newBuilder()
-                .expireAfterWrite(Duration.ofMinutes(1))
-                .maximumSize(10000)
-                .build();
-
-        this.hourlyRequestCache = Caffeine.newBuilder()
-                .expireAfterWrite(Duration.ofHours(1))
-                .maximumSize(10000)
-                .build();
-
-        this.hourlyCharacterCache = Caffeine.newBuilder()
-                .expireAfterWrite(Duration.ofHours(1))
-                .maximumSize(10000)
-                .build();
+        this.store = store;
+
+        for (RateLimitStore.Limit limit : RateLimitStore.Limit.values()) {
+            rejections.put(limit, Counter.builder("tts.ratelimit.rejections")
+                    .description("Requests rejected by a rate limit")
+                    .tag("limit", limit.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+        }
+        Gauge.builder("tts.ratelimit.clients", store, RateLimitStore::trackedClients)
+                .description("Clients with rate-limit state that hasn't drained yet")
+                .register(meterRegistry);
     }
 
     public boolean isAllowed(String clientIdentifier, int textLength) {
@@ -47,40 +45,25 @@ public class RateLimitService {
         }
 
         try {
-            // Check per-minute rate limit
-            AtomicInteger minuteCount = minuteCache.get(clientIdentifier + ":minute", 
-                k -> new AtomicInteger(0));
-            
-            if (minuteCount.incrementAndGet() > rateLimitProperties.getMaxRequestsPerMinute()) {
-                logger.warn("Rate limit exceeded for client {}: {} requests per minute", 
-                           clientIdentifier, minuteCount.get());
-                return false;
-            }
-
-            // Check hourly request limit
-            AtomicInteger hourlyRequestCount = hourlyRequestCache.get(clientIdentifier + ":hour:requests", 
-                k -> new AtomicInteger(0));
-            
-            if (hourlyRequestCount.incrementAndGet() > rateLimitProperties.getMaxRequestsPerHour()) {
-                logger.warn("Hourly request limit exceeded for client {}: {} requests per hour", 
-                           clientIdentifier, hourlyRequestCount.get());
-                return false;
+            RateLimitStore.Limit exceeded = store.tryAcquire(clientIdentifier,
+                    GcraState.cost(1, rateLimitProperties.getMaxRequestsPerMinute()),
+                    GcraState.cost(1, rateLimitProperties.getMaxRequestsPerHour()),
+                    GcraState.cost(textLength, rateLimitProperties.getMaxCharactersPerHour()));
+            if (exceeded == null) {
+                return true;
             }
 
-            // Check hourly character limit
-            AtomicInteger hourlyCharCount = hourlyCharacterCache.get(clientIdentifier + ":hour:chars", 
-                k -> new AtomicInteger(0));
-            
-            if (hourlyCharCount.addAndGet(textLength) > rateLimitProperties.getMaxCharactersPerHour()) {
-                logger.warn("Hourly character limit exceeded for client {}: {} characters per hour", 
-                           clientIdentifier, hourlyCharCount.get());
-                return false;
+            rejections.get(exceeded).increment();
+            RateLimitInfo info = getRateLimitInfo(clientIdentifier);
+            switch (exceeded) {
+                case MINUTE_REQUESTS -> logger.warn("Rate limit exceeded for client {}: {} requests per minute",
+                        clientIdentifier, info.currentMinuteRequests);
+                case HOURLY_REQUESTS -> logger.warn("Hourly request limit exceeded for client {}: {} requests per hour",
+                        clientIdentifier, info.currentHourlyRequests);
+                case HOURLY_CHARACTERS -> logger.warn("Hourly character limit exceeded for client {}: {} characters per hour, {} more requested",
+                        clientIdentifier, info.currentHourlyCharacters, textLength);
             }
-
-            logger.debug("Rate limit check passed for client {}: minute={}, hourly_requests={}, hourly_chars={}", 
-                        clientIdentifier, minuteCount.get(), hourlyRequestCount.get(), hourlyCharCount.get());
-            
-            return true;
+            return false;
 
         } catch (Exception e) {
             logger.error("Error checking rate limit for client {}", clientIdentifier, e);
@@ -90,20 +73,22 @@ public class RateLimitService {
     }
 
     public RateLimitInfo getRateLimitInfo(String clientIdentifier) {
-        AtomicInteger minuteCount = minuteCache.getIfPresent(clientIdentifier + ":minute");
-        AtomicInteger hourlyRequestCount = hourlyRequestCache.getIfPresent(clientIdentifier + ":hour:requests");
-        AtomicInteger hourlyCharCount = hourlyCharacterCache.getIfPresent(clientIdentifier + ":hour:chars");
+        long usage = store.usage(clientIdentifier);
 
         return new RateLimitInfo(
-            minuteCount != null ? minuteCount.get() : 0,
+            GcraState.usage(GcraState.minuteDebt(usage), rateLimitProperties.getMaxRequestsPerMinute()),
             rateLimitProperties.getMaxRequestsPerMinute(),
-            hourlyRequestCount != null ? hourlyRequestCount.get() : 0,
+            GcraState.usage(GcraState.hourlyRequestDebt(usage), rateLimitProperties.getMaxRequestsPerHour()),
             rateLimitProperties.getMaxRequestsPerHour(),
-            hourlyCharCount != null ? hourlyCharCount.get() : 0,
+            GcraState.usage(GcraState.hourlyCharacterDebt(usage), rateLimitProperties.getMaxCharactersPerHour()),
             rateLimitProperties.getMaxCharactersPerHour()
         );
     }
 
+    public int getTrackedClients() {
+        return store.trackedClients();
+    }
+
     public static class RateLimitInfo {
         public final int currentMinuteRequests;
         public final int maxMinuteRequests;
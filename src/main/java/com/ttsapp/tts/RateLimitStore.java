@@ -0,0 +1,21 @@
+package com.ttsapp.tts;
+
+// Where RateLimitService keeps per-client usage. Costs and debts are fractions of each limit's
+// window in GcraState units, so a store never needs to know the configured limits.
+public interface RateLimitStore {
+
+    enum Limit {
+        MINUTE_REQUESTS,
+        HOURLY_REQUESTS,
+        HOURLY_CHARACTERS
+    }
+
+    // Charges all three costs and returns null if they fit; otherwise charges nothing and returns
+    // the first limit that would be exceeded
+    Limit tryAcquire(String clientIdentifier, long minuteCost, long hourlyRequestCost, long hourlyCharacterCost);
+
+    // The client's current debts, packed as a GcraState and drained to now
+    long usage(String clientIdentifier);
+
+    int trackedClients();
+}
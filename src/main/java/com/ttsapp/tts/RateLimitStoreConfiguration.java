@@ -0,0 +1,41 @@
+package com.ttsapp.tts;
+
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.SocketOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class RateLimitStoreConfiguration {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitStoreConfiguration.class);
+
+    @Bean(destroyMethod = "close")
+    public RateLimitStore rateLimitStore(RateLimitProperties rateLimitProperties) {
+        String store = rateLimitProperties.getStore() == null ? "memory" : rateLimitProperties.getStore().trim().toLowerCase();
+        switch (store) {
+            case "memory" -> {
+                logger.info("Rate limit usage kept in memory (per replica)");
+                return new InMemoryRateLimitStore();
+            }
+            case "redis" -> {
+                RateLimitProperties.Redis redis = rateLimitProperties.getRedis();
+                // The URI can carry a password, so only where it points is logged
+                RedisURI uri = RedisURI.create(redis.getUri());
+                logger.info("Rate limit usage shared through Redis at {}:{} (database {}), flushed every {} ms",
+                        uri.getHost(), uri.getPort(), uri.getDatabase(), redis.getFlushInterval().toMillis());
+                // Connecting happens in the background, so a slow or absent Redis can't hold up startup
+                RedisClient client = RedisClient.create(uri);
+                client.setOptions(ClientOptions.builder()
+                        .socketOptions(SocketOptions.builder().connectTimeout(redis.getTimeout()).build())
+                        .build());
+                return new RedisRateLimitStore(client, redis.getKeyPrefix(), redis.getFlushInterval(), redis.getTimeout());
+            }
+            default -> throw new IllegalArgumentException("Unknown app.rate-limit.store: " + rateLimitProperties.getStore());
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.ttsapp.tts;
+
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Shares usage between replicas through Redis (or anything speaking its protocol and Lua).
+//
+// Requests are checked against a local mirror of each client's shared state, exactly like the
+// in-memory store, and what they charge is also added to a pending total. A flusher pushes every
+// client's pending total to Redis in one pipelined batch; the script there drains and adds
+// atomically on the server clock and returns the combined usage of all replicas, which replaces
+// the mirror. A client new to this replica starts from an empty mirror that the next flush
+// reconciles, so a request never waits on the network, and the shared limit can be overshot by
+// at most what each replica admits in one flush interval. Redis is only ever talked to from the
+// flusher, which also connects, so a Redis that is down at startup or goes away later leaves
+// every replica enforcing the limits locally until it is back.
+public class RedisRateLimitStore implements RateLimitStore, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisRateLimitStore.class);
+
+    private static final Limit[] LIMITS = {null, Limit.MINUTE_REQUESTS, Limit.HOURLY_REQUESTS, Limit.HOURLY_CHARACTERS};
+
+    // KEYS[1] = client key; ARGV = scale, minute window ms, hour window ms, minute, hourly request
+    // and hourly character costs. Debts are kept as fractional numbers so frequent small drains
+    // don't round away, and the key expires once even the hourly debt must have drained. Effects
+    // replication, needed for TIME, is the default since Redis 5; the call is only for older ones.
+    static final String CHARGE_SCRIPT = """
+            if redis.replicate_commands then redis.replicate_commands() end
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local scale = tonumber(ARGV[1])
+            local minute_ms = tonumber(ARGV[2])
+            local hour_ms = tonumber(ARGV[3])
+            local state = redis.call('HMGET', KEYS[1], 't', 'm', 'h', 'c')
+            local elapsed = math.max(0, now - (tonumber(state[1]) or now))
+            local function drain(debt, window_ms)
+              return math.max(0, (tonumber(debt) or 0) - elapsed * scale / window_ms)
+            end
+            local m = drain(state[2], minute_ms) + tonumber(ARGV[4])
+            local h = drain(state[3], hour_ms) + tonumber(ARGV[5])
+            local c = drain(state[4], hour_ms) + tonumber(ARGV[6])
+            if m + h + c > 0 then
+              redis.call('HSET', KEYS[1], 't', now, 'm', m, 'h', h, 'c', c)
+              redis.call('PEXPIRE', KEYS[1], hour_ms)
+            end
+            return {math.ceil(m), math.ceil(h), math.ceil(c)}
+            """;
+
+    private static final String MINUTE_MS = String.valueOf(GcraState.MINUTE_TICKS * GcraState.TICK_NANOS / 1_000_000);
+    private static final String HOUR_MS = String.valueOf(GcraState.HOUR_TICKS * GcraState.TICK_NANOS / 1_000_000);
+    private static final String SCALE = String.valueOf(GcraState.SCALE);
+
+    // Pending charges: three 21-bit totals, far more than one flush interval can admit
+    private static final int PENDING_BITS = 21;
+    private static final long PENDING_MASK = (1L << PENDING_BITS) - 1;
+
+    // How long to wait after a failed connect before trying again
+    private static final long RECONNECT_DELAY_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final RedisClient client;
+    private final String keyPrefix;
+    private final Duration timeout;
+    private final Map<String, Mirror> mirrors = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+
+    // Connection state is only touched by flush and close, under the store's lock. Lettuce
+    // reconnects an established connection by itself; these are null until the first connect
+    // succeeds.
+    private StatefulRedisConnection<String, String> connection;
+    // Separate connection with manual flushing, used only to pipeline the flush batch
+    private StatefulRedisConnection<String, String> batchConnection;
+    private String scriptSha;
+    private long nextConnectAttempt = System.nanoTime();
+    private boolean unreachableLogged;
+
+    public RedisRateLimitStore(RedisClient client, String keyPrefix, Duration flushInterval, Duration timeout) {
+        this.client = client;
+        this.keyPrefix = keyPrefix;
+        this.timeout = timeout;
+        this.client.setDefaultTimeout(timeout);
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-limit-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // The first run connects right away, in the background
+        this.flusher.scheduleWithFixedDelay(this::flush, 0, flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+        this.flusher.scheduleWithFixedDelay(this::sweep, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public Limit tryAcquire(String clientIdentifier, long minuteCost, long hourlyRequestCost, long hourlyCharacterCost) {
+        while (true) {
+            Mirror mirror = mirrors.get(clientIdentifier);
+            if (mirror == null) {
+                // Starts empty; the next flush fetches the client's shared usage into it
+                mirror = mirrors.computeIfAbsent(clientIdentifier, k -> new Mirror());
+            }
+            int outcome = GcraState.tryCharge(mirror.state, minuteCost, hourlyRequestCost, hourlyCharacterCost);
+            if (outcome == GcraState.ALLOWED) {
+                mirror.pending.getAndAdd(packPending(minuteCost, hourlyRequestCost, hourlyCharacterCost));
+                return null;
+            }
+            if (outcome != GcraState.STATE_RETIRED) {
+                return LIMITS[outcome];
+            }
+            mirrors.remove(clientIdentifier, mirror);
+        }
+    }
+
+    @Override
+    public long usage(String clientIdentifier) {
+        Mirror mirror = mirrors.get(clientIdentifier);
+        return mirror != null ? GcraState.drainedToNow(mirror.state.get()) : 0;
+    }
+
+    @Override
+    public int trackedClients() {
+        return mirrors.size();
+    }
+
+    // Pushes every client's pending charges in one pipelined round trip and adopts the combined
+    // usage; clients seen for the first time are included even with nothing pending
+    synchronized void flush() {
+        if (!connected()) {
+            // Nobody to share with: the charges stay applied to the local mirrors only
+            mirrors.forEach((clientIdentifier, mirror) -> mirror.pending.set(0));
+            return;
+        }
+        try {
+            RedisAsyncCommands<String, String> commands = batchConnection.async();
+            List<Mirror> batch = new ArrayList<>();
+            List<RedisFuture<List<Long>>> results = new ArrayList<>();
+            mirrors.forEach((clientIdentifier, mirror) -> {
+                long pending = mirror.pending.getAndSet(0);
+                if (pending == 0 && mirror.reconciled) {
+                    return;
+                }
+                batch.add(mirror);
+                results.add(commands.evalsha(scriptSha, ScriptOutputType.MULTI, new String[]{keyPrefix + clientIdentifier},
+                        SCALE, MINUTE_MS, HOUR_MS,
+                        String.valueOf(pendingField(pending, 2)),
+                        String.valueOf(pendingField(pending, 1)),
+                        String.valueOf(pendingField(pending, 0))));
+            });
+            if (batch.isEmpty()) {
+                return;
+            }
+            batchConnection.flushCommands();
+            if (!LettuceFutures.awaitAll(timeout, results.toArray(new RedisFuture[0]))) {
+                logger.warn("Timed out pushing rate limit usage for {} clients to Redis", batch.size());
+                return;
+            }
+
+            for (int i = 0; i < batch.size(); i++) {
+                List<Long> debts = results.get(i).get();
+                adopt(batch.get(i), debts.get(0), debts.get(1), debts.get(2));
+            }
+        } catch (Exception e) {
+            // The charges stay applied to the local mirrors; only their share with other replicas is lost
+            if (e instanceof RedisNoScriptException || e.getCause() instanceof RedisNoScriptException) {
+                reloadScript();
+            } else {
+                logger.warn("Could not push rate limit usage to Redis", e);
+            }
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // The shared debts already include everything flushed; charges admitted since then are re-added
+    private static void adopt(Mirror mirror, long minuteDebt, long hourlyRequestDebt, long hourlyCharacterDebt) {
+        mirror.reconciled = true;
+        while (true) {
+            long current = mirror.state.get();
+            if (current == GcraState.RETIRED) {
+                return;
+            }
+            long pending = mirror.pending.get();
+            long next = GcraState.pack(GcraState.currentTick(),
+                    minuteDebt + pendingField(pending, 2),
+                    hourlyRequestDebt + pendingField(pending, 1),
+                    hourlyCharacterDebt + pendingField(pending, 0));
+            if (mirror.state.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    // Drops mirrors of clients that have drained and have nothing left to push
+    void sweep() {
+        mirrors.forEach((clientIdentifier, mirror) -> {
+            long current = mirror.state.get();
+            if (current == GcraState.RETIRED
+                    || (mirror.pending.get() == 0 && GcraState.isDrained(current)
+                        && mirror.state.compareAndSet(current, GcraState.RETIRED))) {
+                mirrors.remove(clientIdentifier, mirror);
+            }
+        });
+    }
+
+    // Connects, and loads the script, unless already connected or a recent attempt failed
+    private boolean connected() {
+        if (batchConnection != null) {
+            return true;
+        }
+        if (System.nanoTime() - nextConnectAttempt < 0) {
+            return false;
+        }
+        try {
+            connection = client.connect();
+            scriptSha = connection.sync().scriptLoad(CHARGE_SCRIPT);
+            batchConnection = client.connect();
+            batchConnection.setAutoFlushCommands(false);
+            logger.info("Connected to Redis, sharing rate limit usage");
+            unreachableLogged = false;
+            return true;
+        } catch (RedisException e) {
+            if (connection != null) {
+                connection.close();
+                connection = null;
+            }
+            nextConnectAttempt = System.nanoTime() + RECONNECT_DELAY_NANOS;
+            // Logged once per outage; the limits are still enforced, just not shared
+            if (!unreachableLogged) {
+                logger.warn("Redis unreachable, enforcing rate limits locally until it is back: {}", e.getMessage());
+                unreachableLogged = true;
+            }
+            return false;
+        }
+    }
+
+    private void reloadScript() {
+        try {
+            // Redis was restarted or flushed its script cache
+            scriptSha = connection.sync().scriptLoad(CHARGE_SCRIPT);
+        } catch (RuntimeException e) {
+            logger.warn("Could not load the rate limit script into Redis", e);
+        }
+    }
+
+    private static long packPending(long minuteCost, long hourlyRequestCost, long hourlyCharacterCost) {
+        return (minuteCost << (2 * PENDING_BITS)) | (hourlyRequestCost << PENDING_BITS) | hourlyCharacterCost;
+    }
+
+    private static long pendingField(long pending, int index) {
+        return (pending >>> (index * PENDING_BITS)) & PENDING_MASK;
+    }
+
+    @Override
+    public void close() {
+        // Let a running flush finish, then push whatever was admitted after it
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (batchConnection != null) {
+                flush();
+                batchConnection.close();
+                connection.close();
+            }
+        }
+        client.shutdown();
+    }
+
+    private static final class Mirror {
+        final AtomicLong state = new AtomicLong();
+        final AtomicLong pending = new AtomicLong();
+        // Set once a flush has replaced the mirror with the shared usage
+        volatile boolean reconciled;
+    }
+}
@@ -0,0 +1,276 @@
+package com.ttsapp.tts;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+// One clip in the AudioStore, together with what the client needs to serve it. The bytes live
+// in a heap array (hot tier), compacted on the heap (PCM WAV in the hot tier), or in a read-only
+// memory-mapped file (spill and durable tiers).
+public final class StoredAudio {
+
+    private static final int WRITE_CHUNK_BYTES = 64 * 1024;
+
+    // Hot clips: the array the clip starts at the beginning of, which may run on past its end
+    private final byte[] heapData;
+    // Null for compacted clips, which are decoded on the way out instead
+    private final ByteBuffer buffer;
+    private final CompactWav compact;
+    private final String format;
+    private final String etag;
+    private final long storedAtNanos;
+
+    public StoredAudio(byte[] data, String format) {
+        this(data, data.length, format);
+    }
+
+    // The clip is the buffer's remaining bytes; a heap buffer's array is kept rather than copied
+    public StoredAudio(ByteBuffer data, String format) {
+        this(heapArray(data), data.remaining(), format);
+    }
+
+    private StoredAudio(byte[] data, int length, String format) {
+        this(data, ByteBuffer.wrap(data, 0, length).slice().asReadOnlyBuffer(), null,
+                format == null ? "mp3" : format.toLowerCase(), contentHash(data, length), System.nanoTime());
+    }
+
+    private StoredAudio(byte[] heapData, ByteBuffer buffer, CompactWav compact, String format, String etag, long storedAtNanos) {
+        this.heapData = heapData;
+        this.buffer = buffer;
+        this.compact = compact;
+        this.format = format;
+        this.etag = etag;
+        this.storedAtNanos = storedAtNanos;
+    }
+
+    // The same clip backed by a mapped file instead of the heap; it keeps its original store time
+    StoredAudio spilledTo(ByteBuffer mapped) {
+        return new StoredAudio(null, mapped.asReadOnlyBuffer(), null, format, etag, storedAtNanos);
+    }
+
+    // A clip read back from the durable log, served straight out of the segment's mapping
+    static StoredAudio mapped(ByteBuffer mapped, String format, String etag, long storedAtNanos) {
+        return new StoredAudio(null, mapped.asReadOnlyBuffer(), null, format, etag, storedAtNanos);
+    }
+
+    static StoredAudio compacted(byte[] data, String format) {
+        return compacted(ByteBuffer.wrap(data), format);
+    }
+
+    // PCM WAV is kept compacted when that saves enough; anything else as it is
+    static StoredAudio compacted(ByteBuffer data, String format) {
+        byte[] array = heapArray(data);
+        int length = data.remaining();
+        CompactWav compact = "wav".equalsIgnoreCase(format) ? CompactWav.encode(array, length) : null;
+        if (compact == null) {
+            return new StoredAudio(array, length, format);
+        }
+        return new StoredAudio(null, null, compact, "wav", contentHash(array, length), System.nanoTime());
+    }
+
+    // The heap array itself for hot clips that fill it; anything else is copied out, decoded
+    // for compacted clips
+    public byte[] getData() {
+        if (heapData != null && heapData.length == buffer.capacity()) {
+            return heapData;
+        }
+        if (compact != null) {
+            return compact.decode();
+        }
+        byte[] copy = new byte[buffer.capacity()];
+        buffer.duplicate().clear().get(copy);
+        return copy;
+    }
+
+    public ByteBuffer getBuffer() {
+        if (compact != null) {
+            return ByteBuffer.wrap(compact.decode()).asReadOnlyBuffer();
+        }
+        return buffer.duplicate().clear();
+    }
+
+    public int getLength() {
+        return compact != null ? compact.length() : buffer.capacity();
+    }
+
+    // Heap bytes the clip takes up: its array, less for compacted clips and none for mapped ones
+    public int getFootprint() {
+        if (compact != null) {
+            return compact.footprint();
+        }
+        return heapData != null ? heapData.length : 0;
+    }
+
+    public boolean isSpilled() {
+        return heapData == null && compact == null;
+    }
+
+    public boolean isCompacted() {
+        return compact != null;
+    }
+
+    long getStoredAtNanos() {
+        return storedAtNanos;
+    }
+
+    // Strong validator: SHA-256 of the exact bytes, computed once when the clip is stored.
+    // Content-addressed ids hash the synthesis inputs, not the output, so they can't serve as one.
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public String getContentType() {
+        return switch (format) {
+            case "wav" -> "audio/wav";
+            case "opus" -> "audio/opus";
+            default -> "audio/mpeg";
+        };
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        if (heapData != null) {
+            out.write(heapData, 0, buffer.capacity());
+            return;
+        }
+        if (compact != null) {
+            compact.writeTo(out);
+            return;
+        }
+        ByteBuffer source = getBuffer();
+        byte[] chunk = new byte[Math.min(WRITE_CHUNK_BYTES, source.remaining())];
+        while (source.hasRemaining()) {
+            int length = Math.min(chunk.length, source.remaining());
+            source.get(chunk, 0, length);
+            out.write(chunk, 0, length);
+        }
+    }
+
+    private static byte[] heapArray(ByteBuffer data) {
+        if (data.hasArray() && data.arrayOffset() + data.position() == 0) {
+            return data.array();
+        }
+        byte[] copy = new byte[data.remaining()];
+        data.duplicate().get(copy);
+        return copy;
+    }
+
+    private static String contentHash(byte[] data, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(data, 0, length);
+            return '"' + HexFormat.of().formatHex(digest.digest()) + '"';
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // Wraps the stored bytes without copying them; byte ranges are read straight out of them.
+    // Compacted clips are decoded block by block as the response is written.
+    public Resource asResource() {
+        if (compact != null) {
+            return new CompactAudioResource(compact);
+        }
+        if (heapData != null && heapData.length == buffer.capacity()) {
+            return new ByteArrayResource(heapData);
+        }
+        return new BufferAudioResource(buffer);
+    }
+
+    private static final class CompactAudioResource extends AbstractResource {
+        private final CompactWav compact;
+
+        CompactAudioResource(CompactWav compact) {
+            this.compact = compact;
+        }
+
+        @Override
+        public long contentLength() {
+            return compact.length();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return compact.newInputStream();
+        }
+
+        @Override
+        public String getDescription() {
+            return "Compacted WAV [" + compact.length() + " bytes]";
+        }
+    }
+
+    // A mapped clip, or a hot one that doesn't fill its array
+    private static final class BufferAudioResource extends AbstractResource {
+        private final ByteBuffer buffer;
+
+        BufferAudioResource(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public long contentLength() {
+            return buffer.capacity();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteBufferInputStream(buffer.duplicate().clear());
+        }
+
+        @Override
+        public String getDescription() {
+            return "Audio buffer [" + buffer.capacity() + " bytes]";
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        // Range requests skip to their start, which is just a position change on the mapping
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.ttsapp.tts;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+// Asynchronous synthesis: jobs wait in one queue per client, and a fixed set of workers takes
+// them in weighted round-robin order across clients, so a client with a deep backlog gets its
+// share of the workers and no more. The backlog is bounded, overall and per client; past either
+// bound a job is rejected up front with an estimate of when to retry, rather than queued to wait
+// longer than anyone would.
+@Service
+public class SynthesisJobQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(SynthesisJobQueue.class);
+
+    private final SynthesisService synthesisService;
+    private final int workers;
+    private final int maxQueued;
+    private final int maxQueuedPerClient;
+    private final int defaultWeight;
+    private final Map<String, Integer> clientWeights;
+
+    // Scheduler state, guarded by lock: each client's queue, and the clients that have queued
+    // jobs in round-robin order (the head is the one being served)
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition jobAvailable = lock.newCondition();
+    private final Map<String, ClientQueue> queues = new HashMap<>();
+    private final ArrayDeque<ClientQueue> rotation = new ArrayDeque<>();
+    private int queued;
+
+    private final AtomicInteger running = new AtomicInteger();
+    // Moving average of how long a job runs, for Retry-After estimates
+    private volatile double averageRunSeconds = 5;
+    private final Cache<String, Job> jobs;
+    private final ExecutorService workerExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final Timer waitTimer;
+    private final Counter rejectedFull;
+    private final Counter rejectedClientFull;
+
+    public SynthesisJobQueue(SynthesisService synthesisService, AudioStore audioStore, JobQueueProperties properties,
+                             MeterRegistry meterRegistry) {
+        this.synthesisService = synthesisService;
+        this.workers = Math.max(1, properties.getWorkers());
+        this.maxQueued = properties.getMaxQueued();
+        this.maxQueuedPerClient = properties.getMaxQueuedPerClient();
+        this.defaultWeight = Math.max(1, properties.getDefaultWeight());
+        this.clientWeights = Map.copyOf(properties.getClientWeights());
+        // Finished jobs stay visible as long as their audio does
+        this.jobs = Caffeine.newBuilder()
+                .expireAfterWrite(audioStore.getTtl())
+                .build();
+
+        this.waitTimer = Timer.builder("tts.jobs.wait")
+                .description("Time jobs spent queued before a worker picked them up")
+                .register(meterRegistry);
+        this.rejectedFull = Counter.builder("tts.jobs.rejected").tag("reason", "queue_full").register(meterRegistry);
+        this.rejectedClientFull = Counter.builder("tts.jobs.rejected").tag("reason", "client_queue_full").register(meterRegistry);
+        Gauge.builder("tts.jobs.queued", this, SynthesisJobQueue::getQueuedCount)
+                .description("Jobs waiting for a worker")
+                .register(meterRegistry);
+        Gauge.builder("tts.jobs.running", running, AtomicInteger::get)
+                .description("Jobs being synthesized")
+                .register(meterRegistry);
+        Gauge.builder("tts.jobs.clients", this, SynthesisJobQueue::getQueuedClients)
+                .description("Clients with jobs waiting")
+                .register(meterRegistry);
+
+        for (int i = 0; i < workers; i++) {
+            workerExecutor.execute(this::work);
+        }
+        logger.info("Job queue initialized with {} workers, backlog bound {} ({} per client)", workers, maxQueued, maxQueuedPerClient);
+    }
+
+    // Queues a job, or throws JobQueueFullException if the overall or the client's backlog is full.
+    // The admission check (the rate limiter) runs under the lock once the job is known to fit, so a
+    // job the queue turns away is never billed; if admission refuses, nothing is queued and this
+    // returns null.
+    public Job submit(String clientIdentifier, String text, String voice, String style, String format,
+                      BooleanSupplier admission) {
+        Job job = new Job(UUID.randomUUID().toString(), clientIdentifier, text, voice, style, format);
+        lock.lock();
+        try {
+            if (queued >= maxQueued) {
+                rejectedFull.increment();
+                throw new JobQueueFullException("Job queue is full", retryAfter(queued), false);
+            }
+            ClientQueue queue = queues.get(clientIdentifier);
+            if (queue != null && queue.jobs.size() >= maxQueuedPerClient) {
+                rejectedClientFull.increment();
+                // This client only gets its round-robin share of the workers, so its own backlog drains more slowly
+                throw new JobQueueFullException("Too many queued jobs for this client",
+                        retryAfter(queue.jobs.size() * Math.max(1, queues.size())), true);
+            }
+            if (!admission.getAsBoolean()) {
+                return null;
+            }
+            if (queue == null) {
+                queue = new ClientQueue(clientIdentifier, clientWeights.getOrDefault(clientIdentifier, defaultWeight));
+                queues.put(clientIdentifier, queue);
+                rotation.addLast(queue);
+            }
+            queue.jobs.addLast(job);
+            queued++;
+            jobAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+        jobs.put(job.jobId, job);
+        logger.debug("Queued job {} for client {}", job.jobId, clientIdentifier);
+        return job;
+    }
+
+    public Job getJob(String jobId) {
+        return jobs.getIfPresent(jobId);
+    }
+
+    // Waits up to the timeout for the job to finish (long-polling); returns whether it has
+    public boolean awaitCompletion(Job job, Duration timeout) throws InterruptedException {
+        if (timeout.isZero() || job.isDone()) {
+            return job.isDone();
+        }
+        try {
+            job.completion.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            // Jobs complete normally even when they fail
+        }
+        return true;
+    }
+
+    // Weighted round robin: the client at the head of the rotation gets up to its weight in jobs
+    // in a row, then goes to the back; a client whose queue empties leaves the rotation
+    private Job next() throws InterruptedException {
+        lock.lock();
+        try {
+            while (rotation.isEmpty()) {
+                jobAvailable.await();
+            }
+            ClientQueue queue = rotation.peekFirst();
+            Job job = queue.jobs.pollFirst();
+            queue.credit--;
+            if (queue.jobs.isEmpty()) {
+                rotation.pollFirst();
+                queues.remove(queue.clientIdentifier);
+            } else if (queue.credit <= 0) {
+                queue.credit = queue.weight;
+                rotation.addLast(rotation.pollFirst());
+            }
+            queued--;
+            return job;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Job job;
+            try {
+                job = next();
+            } catch (InterruptedException e) {
+                return;
+            }
+            run(job);
+        }
+    }
+
+    private void run(Job job) {
+        long started = System.nanoTime();
+        waitTimer.record(started - job.queuedAtNanos, TimeUnit.NANOSECONDS);
+        job.status = JobStatus.RUNNING;
+        running.incrementAndGet();
+        try {
+            SynthesisService.SynthesisResult result = synthesisService.synthesize(job.text, job.voice, job.style, job.format);
+            job.succeed(result);
+        } catch (InterruptedException e) {
+            job.fail("Job was cancelled");
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.warn("Job {} for client {} failed: {}", job.jobId, job.clientIdentifier, e.getMessage());
+            job.fail(e instanceof UpstreamBusyException ? "Service is busy" : "Failed to generate voice: " + e.getMessage());
+        } finally {
+            running.decrementAndGet();
+            double seconds = (System.nanoTime() - started) / 1e9;
+            averageRunSeconds = averageRunSeconds * 0.9 + seconds * 0.1;
+            // Re-put so a job that finished late is still kept for the full TTL
+            jobs.put(job.jobId, job);
+        }
+    }
+
+    // Seconds until a job queued behind this many others could expect a worker
+    private long retryAfter(int jobsAhead) {
+        return Math.max(1, (long) Math.ceil(jobsAhead * averageRunSeconds / workers));
+    }
+
+    public int getQueuedCount() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueuedClients() {
+        lock.lock();
+        try {
+            return queues.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getRunningCount() {
+        return running.get();
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workerExecutor.shutdownNow();
+    }
+
+    private static final class ClientQueue {
+        final String clientIdentifier;
+        final int weight;
+        final ArrayDeque<Job> jobs = new ArrayDeque<>();
+        int credit;
+
+        ClientQueue(String clientIdentifier, int weight) {
+            this.clientIdentifier = clientIdentifier;
+            this.weight = weight;
+            this.credit = weight;
+        }
+    }
+
+    public enum JobStatus {
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED
+    }
+
+    public static class Job {
+        public final String jobId;
+        public final String clientIdentifier;
+        final String text;
+        final String voice;
+        final String style;
+        final String format;
+        final long queuedAtNanos = System.nanoTime();
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+        private volatile JobStatus status = JobStatus.QUEUED;
+        private volatile SynthesisService.SynthesisResult result;
+        private volatile String error;
+
+        Job(String jobId, String clientIdentifier, String text, String voice, String style, String format) {
+            this.jobId = jobId;
+            this.clientIdentifier = clientIdentifier;
+            this.text = text;
+            this.voice = voice;
+            this.style = style;
+            this.format = format;
+        }
+
+        public JobStatus getStatus() {
+            return status;
+        }
+
+        public String getFormat() {
+            return format;
+        }
+
+        public SynthesisService.SynthesisResult getResult() {
+            return result;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public boolean isDone() {
+            return completion.isDone();
+        }
+
+        void succeed(SynthesisService.SynthesisResult result) {
+            this.result = result;
+            this.status = JobStatus.SUCCEEDED;
+            completion.complete(null);
+        }
+
+        void fail(String message) {
+            this.error = message;
+            this.status = JobStatus.FAILED;
+            completion.complete(null);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.ttsapp.tts;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.HexFormat;
+import java.util.Locale;
+
+// Stable content hash of everything that determines the audio produced by a synthesis call.
+// The same inputs always map to the same key, so it doubles as the AudioStore id.
+public final class SynthesisKey {
+
+    private SynthesisKey() {
+    }
+
+    public static String of(String model, String voice, String style, String format, String text) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+
+        update(digest, model);
+        update(digest, voice == null ? "" : voice.trim().toLowerCase(Locale.ROOT));
+        update(digest, normalize(style));
+        update(digest, format == null ? "" : format.trim().toLowerCase(Locale.ROOT));
+        update(digest, normalize(text));
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // Only normalizations that don't change what the model is asked to read: OpenAIService trims
+    // both fields, and browsers submit form line breaks as CRLF while the vibe data uses LF
+    static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(value, Normalizer.Form.NFC);
+        return normalized.replace("\r\n", "\n").trim();
+    }
+
+    private static void update(MessageDigest digest, String field) {
+        byte[] bytes = (field == null ? "" : field).getBytes(StandardCharsets.UTF_8);
+        // Length-prefix every field so ("ab", "c") and ("a", "bc") can never collide
+        digest.update((byte) (bytes.length >>> 24));
+        digest.update((byte) (bytes.length >>> 16));
+        digest.update((byte) (bytes.length >>> 8));
+        digest.update((byte) bytes.length);
+        digest.update(bytes);
+    }
+}
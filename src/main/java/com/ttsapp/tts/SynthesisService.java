@@ -0,0 +1,383 @@
+package com.ttsapp.tts;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+@Service
+public class SynthesisService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SynthesisService.class);
+
+    private final OpenAIService openAIService;
+    private final AudioStore audioStore;
+    private final boolean cacheEnabled;
+    private final int singleRequestCharacters;
+    private final int chunkCharacters;
+    private final int chunkParallelism;
+
+    // Identical requests that arrive while a synthesis is running wait on the same future
+    private final ConcurrentHashMap<String, CompletableFuture<SynthesisResult>> inFlight = new ConcurrentHashMap<>();
+    // Shared calls run on their own threads, so a waiter that goes away can't take the call down with it
+    private final ExecutorService upstreamExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder coalescedRequests = new LongAdder();
+
+    public SynthesisService(OpenAIService openAIService, AudioStore audioStore,
+                            @Value("${app.synthesis-cache.enabled:true}") boolean cacheEnabled,
+                            @Value("${app.long-text.single-request-characters:2000}") int singleRequestCharacters,
+                            @Value("${app.long-text.chunk-characters:1000}") int chunkCharacters,
+                            @Value("${app.long-text.parallelism:4}") int chunkParallelism,
+                            MeterRegistry meterRegistry) {
+        this.openAIService = openAIService;
+        this.audioStore = audioStore;
+        this.cacheEnabled = cacheEnabled;
+        // Past what one response's max_tokens can voice, the audio would be cut off
+        if (singleRequestCharacters > ChatCompletionsCodec.MAX_CHARACTERS) {
+            logger.warn("app.long-text.single-request-characters {} is more than one response can voice; using {}",
+                    singleRequestCharacters, ChatCompletionsCodec.MAX_CHARACTERS);
+        }
+        this.singleRequestCharacters = Math.min(singleRequestCharacters, ChatCompletionsCodec.MAX_CHARACTERS);
+        // A chunk must always fit in a single request, or chunking would never terminate
+        this.chunkCharacters = Math.min(chunkCharacters, this.singleRequestCharacters);
+        this.chunkParallelism = chunkParallelism;
+
+        Gauge.builder("tts.synthesis.in.flight", inFlight, ConcurrentHashMap::size)
+                .description("Distinct syntheses currently running upstream")
+                .register(meterRegistry);
+        FunctionCounter.builder("tts.synthesis.cache.requests", cacheHits, LongAdder::sum)
+                .tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("tts.synthesis.cache.requests", cacheMisses, LongAdder::sum)
+                .tag("result", "miss").register(meterRegistry);
+        FunctionCounter.builder("tts.synthesis.coalesced", coalescedRequests, LongAdder::sum)
+                .description("Requests that joined an identical synthesis already in flight")
+                .register(meterRegistry);
+
+        logger.info("Synthesis service initialized, result cache {}", cacheEnabled ? "enabled" : "disabled");
+    }
+
+    public SynthesisResult synthesize(String text, String voice, String style, String format)
+            throws IOException, InterruptedException {
+        String key = cacheKey(text, voice, style, format);
+
+        if (cacheEnabled) {
+            // A hit skips both the token fetch and the upstream call
+            StoredAudio cached = audioStore.lookup(key);
+            if (cached != null) {
+                cacheHits.increment();
+                logger.debug("Synthesis cache hit for key: {}", key);
+                return new SynthesisResult(key, cached.getLength(), true);
+            }
+            cacheMisses.increment();
+        }
+
+        if (text.trim().length() > singleRequestCharacters) {
+            return synthesizeChunked(key, text, voice, style, format);
+        }
+
+        CompletableFuture<SynthesisResult> flight = new CompletableFuture<>();
+        CompletableFuture<SynthesisResult> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalescedRequests.increment();
+            logger.debug("Joining in-flight synthesis for key: {}", key);
+            return await(existing);
+        }
+
+        upstreamExecutor.execute(() -> runSynthesis(key, flight, text, voice, style, format));
+        return await(flight);
+    }
+
+    // Long text is synthesized as sentence-aligned chunks, several at a time, and stitched back
+    // together, so wall-clock time follows the number of chunk rounds rather than total length.
+    private SynthesisResult synthesizeChunked(String key, String text, String voice, String style, String format)
+            throws IOException, InterruptedException {
+        List<String> chunks = TextChunker.split(text, chunkCharacters);
+        logger.info("Synthesizing {} characters as {} chunks, up to {} at a time", text.length(), chunks.size(), chunkParallelism);
+
+        Semaphore slots = new Semaphore(chunkParallelism);
+        List<CompletableFuture<byte[]>> parts = new ArrayList<>(chunks.size());
+        try {
+            for (String chunk : chunks) {
+                slots.acquire();
+                CompletableFuture<byte[]> part = new CompletableFuture<>();
+                parts.add(part);
+                upstreamExecutor.execute(() -> {
+                    try {
+                        part.complete(chunkAudio(chunk, voice, style, format));
+                    } catch (Throwable t) {
+                        part.completeExceptionally(t);
+                    } finally {
+                        slots.release();
+                    }
+                });
+                // Stop starting new chunks as soon as one has failed
+                for (CompletableFuture<byte[]> started : parts) {
+                    if (started.isCompletedExceptionally()) {
+                        await(started);
+                    }
+                }
+            }
+
+            List<byte[]> audioParts = new ArrayList<>(parts.size());
+            for (CompletableFuture<byte[]> part : parts) {
+                audioParts.add(await(part));
+            }
+
+            byte[] audioData = AudioStitcher.stitch(format, audioParts);
+            String audioId = cacheEnabled ? audioStore.store(key, audioData, format) : audioStore.store(audioData, format);
+            logger.info("Stitched {} chunks into {} bytes of {}", chunks.size(), audioData.length, format);
+            return new SynthesisResult(audioId, audioData.length, false);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Could not stitch " + format + " audio: " + e.getMessage(), e);
+        }
+    }
+
+    // With the cache on, a chunk goes through synthesize like any other request, so it is cached
+    // and coalesced too, and its bytes are read back out of the store. With it off, a stored chunk
+    // would only be a throw-away entry taking up the store's budget, so the upstream bytes go
+    // straight to the stitcher.
+    private byte[] chunkAudio(String chunk, String voice, String style, String format)
+            throws IOException, InterruptedException {
+        if (cacheEnabled) {
+            return storedAudio(synthesize(chunk, voice, style, format).audioId);
+        }
+        ByteBuffer audio = openAIService.generateSpeech(chunk, voice, style, format);
+        if (audio.hasArray() && audio.arrayOffset() == 0 && audio.position() == 0
+                && audio.remaining() == audio.array().length) {
+            return audio.array();
+        }
+        byte[] bytes = new byte[audio.remaining()];
+        audio.get(bytes);
+        return bytes;
+    }
+
+    // A chunk's audio, read back right after it was stored, so only a store far too small for
+    // one request's chunks can have dropped it already
+    private byte[] storedAudio(String audioId) throws IOException {
+        StoredAudio audio = audioStore.lookup(audioId);
+        if (audio == null) {
+            throw new IOException("Chunk audio " + audioId + " was evicted before it could be stitched");
+        }
+        return audio.getData();
+    }
+
+    // The key synthesize caches (and AudioStore content-addresses) this request's audio under
+    public String cacheKey(String text, String voice, String style, String format) {
+        return SynthesisKey.of(openAIService.getModel(), voice, style, format, text);
+    }
+
+    // The longest text synthesized in one upstream call; anything longer is chunked
+    public int getSingleRequestCharacters() {
+        return singleRequestCharacters;
+    }
+
+    public boolean isCacheEnabled() {
+        return cacheEnabled;
+    }
+
+    // Streaming always produces WAV: the upstream streams pcm16, which is framed with a WAV header
+    public String streamingAudioId(String text, String voice, String style) {
+        return cacheKey(text, voice, style, "wav");
+    }
+
+    // Writes a playable WAV stream to the client while the upstream is still generating, then
+    // stores the assembled file under streamingAudioId for replay and download
+    public SynthesisResult streamSynthesis(String text, String voice, String style, OutputStream out)
+            throws IOException, InterruptedException {
+        String key = streamingAudioId(text, voice, style);
+
+        if (cacheEnabled) {
+            StoredAudio cached = audioStore.lookup(key);
+            if (cached != null) {
+                cacheHits.increment();
+                cached.writeTo(out);
+                out.flush();
+                return new SynthesisResult(key, cached.getLength(), true);
+            }
+            cacheMisses.increment();
+        }
+
+        ClientStream client = new ClientStream(out);
+        WavBuffer wav = new WavBuffer(256 * 1024);
+        openAIService.streamSpeech(text, voice, style, chunk -> {
+            // The header goes out with the first audio, so a failure before any audio (busy
+            // upstream, API error) can still be reported with a proper status code
+            if (wav.pcmLength() == 0) {
+                client.write(WavHeader.pcm16(WavHeader.UNKNOWN_LENGTH));
+            }
+            wav.write(chunk);
+            client.write(chunk);
+        });
+
+        // Same audio, but with the real lengths in the header so the stored copy is seekable
+        ByteBuffer audioData = wav.finish();
+        int size = audioData.remaining();
+        String audioId = cacheEnabled ? audioStore.store(key, audioData, "wav") : audioStore.store(audioData, "wav");
+        logger.info("Stored streamed audio with ID: {}, size: {} bytes, client connected until end: {}",
+                audioId, size, !client.disconnected);
+        return new SynthesisResult(audioId, size, false);
+    }
+
+    private void runSynthesis(String key, CompletableFuture<SynthesisResult> flight,
+                              String text, String voice, String style, String format) {
+        try {
+            // The previous flight for this key may have finished between our cache probe and putIfAbsent
+            StoredAudio cached = cacheEnabled ? audioStore.lookup(key) : null;
+            if (cached != null) {
+                flight.complete(new SynthesisResult(key, cached.getLength(), true));
+                return;
+            }
+
+            // The decoded buffer goes into the store as it is, without another copy
+            ByteBuffer audioData = openAIService.generateSpeech(text, voice, style, format);
+            String audioId = cacheEnabled ? audioStore.store(key, audioData, format) : audioStore.store(audioData, format);
+            flight.complete(new SynthesisResult(audioId, audioData.remaining(), false));
+        } catch (Throwable t) {
+            flight.completeExceptionally(t);
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    // Waiting is interruptible, but an interrupted waiter only abandons its own wait; the shared
+    // future is never cancelled, so every other waiter still gets the result or the error
+    private <T> T await(CompletableFuture<T> flight) throws IOException, InterruptedException {
+        try {
+            return flight.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof InterruptedException) {
+                throw new IOException("Upstream synthesis was interrupted", cause);
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        upstreamExecutor.shutdownNow();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    public double getCacheHitRatio() {
+        long hits = cacheHits.sum();
+        long total = hits + cacheMisses.sum();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    public long getCoalescedRequests() {
+        return coalescedRequests.sum();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    // Keeps the upstream stream going after the client disconnects, so the generation that was
+    // already paid for still ends up in the AudioStore
+    private static final class ClientStream {
+        private final OutputStream out;
+        private boolean disconnected;
+
+        ClientStream(OutputStream out) {
+            this.out = out;
+        }
+
+        void write(byte[] chunk) {
+            if (disconnected) {
+                return;
+            }
+            try {
+                out.write(chunk);
+                out.flush();
+            } catch (IOException e) {
+                disconnected = true;
+                logger.debug("Streaming client disconnected: {}", e.getMessage());
+            }
+        }
+    }
+
+    // The streamed clip assembled in one array, with room for the WAV header left at the start and
+    // filled in once the length is known, so the store gets this array rather than a copy of it
+    private static final class WavBuffer {
+        private byte[] bytes;
+        private int count = WavHeader.SIZE;
+
+        WavBuffer(int initialCapacity) {
+            bytes = new byte[WavHeader.SIZE + initialCapacity];
+        }
+
+        int pcmLength() {
+            return count - WavHeader.SIZE;
+        }
+
+        void write(byte[] chunk) {
+            if (count + chunk.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, count + chunk.length));
+            }
+            System.arraycopy(chunk, 0, bytes, count, chunk.length);
+            count += chunk.length;
+        }
+
+        // The clip is the buffer's remaining bytes; like the response codec's buffer, the array
+        // is only copied down when the growth slack is more than an eighth of the clip
+        ByteBuffer finish() {
+            System.arraycopy(WavHeader.pcm16(pcmLength()), 0, bytes, 0, WavHeader.SIZE);
+            if (bytes.length - count > count / 8) {
+                bytes = Arrays.copyOf(bytes, count);
+            }
+            return ByteBuffer.wrap(bytes, 0, count);
+        }
+    }
+
+    // Where the audio was stored and how long it is; callers that need the bytes look them up
+    // by audioId, so a cache hit never copies or decodes the clip
+    public static class SynthesisResult {
+        public final String audioId;
+        public final int size;
+        public final boolean cached;
+
+        public SynthesisResult(String audioId, int size, boolean cached) {
+            this.audioId = audioId;
+            this.size = size;
+            this.cached = cached;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.ttsapp.tts;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+// Splits long text into chunks of at most maxCharacters, preferring paragraph breaks, then
+// sentence ends, then clause breaks and whitespace, so each chunk still reads naturally on its own
+public final class TextChunker {
+
+    private static final Pattern PARAGRAPH_BREAK = Pattern.compile("\\n\\s*\\n");
+    private static final Pattern SENTENCE_END = Pattern.compile("(?<=[.!?…。！？][\"'”’)\\]]?)\\s+");
+    private static final Pattern CLAUSE_BREAK = Pattern.compile("(?<=[,;:—])\\s+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private TextChunker() {
+    }
+
+    public static List<String> split(String text, int maxCharacters) {
+        List<String> chunks = new ArrayList<>();
+        StringBuilder current = new StringBuilder(maxCharacters);
+
+        for (String paragraph : PARAGRAPH_BREAK.split(text.trim())) {
+            String trimmed = paragraph.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            // Whole paragraphs are kept together whenever they fit in a chunk
+            if (trimmed.length() <= maxCharacters) {
+                if (!fits(current, trimmed, maxCharacters)) {
+                    flush(current, chunks);
+                }
+                append(current, trimmed, "\n\n");
+                continue;
+            }
+            flush(current, chunks);
+            for (String piece : pieces(trimmed, maxCharacters)) {
+                if (!fits(current, piece, maxCharacters)) {
+                    flush(current, chunks);
+                }
+                append(current, piece, " ");
+            }
+        }
+        flush(current, chunks);
+        return chunks;
+    }
+
+    // Sentences no longer than maxCharacters, breaking over-long ones at clause breaks, then words
+    private static List<String> pieces(String paragraph, int maxCharacters) {
+        List<String> pieces = new ArrayList<>();
+        for (String sentence : SENTENCE_END.split(paragraph)) {
+            if (sentence.length() <= maxCharacters) {
+                pieces.add(sentence);
+                continue;
+            }
+            for (String clause : pack(CLAUSE_BREAK.split(sentence), maxCharacters)) {
+                if (clause.length() <= maxCharacters) {
+                    pieces.add(clause);
+                    continue;
+                }
+                for (String words : pack(WHITESPACE.split(clause), maxCharacters)) {
+                    // A single "word" longer than a chunk (e.g. a URL) is the only thing cut mid-token
+                    for (int start = 0; start < words.length(); start += maxCharacters) {
+                        pieces.add(words.substring(start, Math.min(words.length(), start + maxCharacters)));
+                    }
+                }
+            }
+        }
+        return pieces;
+    }
+
+    private static List<String> pack(String[] parts, int maxCharacters) {
+        List<String> packed = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String part : parts) {
+            if (!fits(current, part, maxCharacters)) {
+                flush(current, packed);
+            }
+            append(current, part, " ");
+        }
+        flush(current, packed);
+        return packed;
+    }
+
+    private static boolean fits(StringBuilder current, String piece, int maxCharacters) {
+        int separator = current.isEmpty() ? 0 : 2;
+        return current.length() + separator + piece.length() <= maxCharacters;
+    }
+
+    private static void append(StringBuilder current, String piece, String separator) {
+        if (!current.isEmpty()) {
+            current.append(separator);
+        }
+        current.append(piece);
+    }
+
+    private static void flush(StringBuilder current, List<String> chunks) {
+        if (!current.isEmpty()) {
+            chunks.add(current.toString());
+            current.setLength(0);
+        }
+    }
+}
@@ -1,15 +1,29 @@
 package com.ttsapp.tts;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -18,26 +32,45 @@ public class TtsController {
 
     private static final Logger logger = LoggerFactory.getLogger(TtsController.class);
     
-    private static final List<String> AVAILABLE_VOICES = List.of(
+    static final List<String> AVAILABLE_VOICES = List.of(
         "alloy", "ash", "ballad", "coral", "echo", "fable", "nova", "onyx", "sage", "shimmer", "verse"
     );
 
-    private final OpenAIService openAIService;
+    private static final ObjectMapper JSON = new ObjectMapper();
+    // Longest a job status request may be held open waiting for the job to finish
+    private static final long MAX_JOB_WAIT_SECONDS = 60;
+
+    private final SynthesisService synthesisService;
     private final AudioStore audioStore;
     private final VibeService vibeService;
     private final RateLimitService rateLimitService;
     private final ClientIdentifierService clientIdentifierService;
     private final RateLimitProperties rateLimitProperties;
+    private final UpstreamBulkhead upstreamBulkhead;
+    private final BatchService batchService;
+    private final SynthesisJobQueue jobQueue;
+    private final int maxTextLength;
 
-    public TtsController(OpenAIService openAIService, AudioStore audioStore, VibeService vibeService,
+    public TtsController(SynthesisService synthesisService, AudioStore audioStore, VibeService vibeService,
                         RateLimitService rateLimitService, ClientIdentifierService clientIdentifierService,
-                        RateLimitProperties rateLimitProperties) {
-        this.openAIService = openAIService;
+                        RateLimitProperties rateLimitProperties, UpstreamBulkhead upstreamBulkhead,
+                        BatchService batchService, SynthesisJobQueue jobQueue,
+                        @Value("${app.long-text.max-characters:20000}") int maxTextLength) {
+        this.synthesisService = synthesisService;
         this.audioStore = audioStore;
         this.vibeService = vibeService;
         this.rateLimitService = rateLimitService;
         this.clientIdentifierService = clientIdentifierService;
         this.rateLimitProperties = rateLimitProperties;
+        this.upstreamBulkhead = upstreamBulkhead;
+        this.batchService = batchService;
+        this.jobQueue = jobQueue;
+        this.maxTextLength = maxTextLength;
+    }
+
+    @ModelAttribute("maxTextLength")
+    public int maxTextLength() {
+        return maxTextLength;
     }
 
     @GetMapping("/")
@@ -87,10 +120,10 @@ public class TtsController {
             // Use the normalized voice for API call
             voice = normalizedVoice;
 
-            // Limit text length
-            if (text.length() > 4000) {
-                text = text.substring(0, 4000);
-                model.addAttribute("warning", "Text was truncated to 4000 characters");
+            // Limit text length; anything longer than a single request is synthesized in chunks
+            if (text.length() > maxTextLength) {
+                text = text.substring(0, maxTextLength);
+                model.addAttribute("warning", "Text was truncated to " + maxTextLength + " characters");
             }
 
             // Rate limiting check
@@ -122,11 +155,9 @@ public class TtsController {
                 return "index";
             }
 
-            // Generate speech
-            byte[] audioData = openAIService.generateSpeech(text, voice, style, format);
-            
-            // Store audio
-            String audioId = audioStore.store(audioData);
+            // Generate speech (served from the synthesis cache when the same request was made recently)
+            SynthesisService.SynthesisResult result = synthesisService.synthesize(text, voice, style, format);
+            String audioId = result.audioId;
 
             // Get rate limit info for display
             RateLimitService.RateLimitInfo rateLimitInfo = rateLimitService.getRateLimitInfo(clientId);
@@ -139,12 +170,12 @@ public class TtsController {
             model.addAttribute("lastStyle", style);
             model.addAttribute("lastFormat", format);
             model.addAttribute("audioId", audioId);
-            model.addAttribute("audioSize", formatFileSize(audioData.length));
+            model.addAttribute("audioSize", formatFileSize(result.size));
             model.addAttribute("success", "Voice generated successfully!");
             model.addAttribute("rateLimitInfo", rateLimitInfo);
 
-            logger.info("TTS generated successfully for client {}, audio ID: {}, size: {} bytes", 
-                       clientId, audioId, audioData.length);
+            logger.info("TTS generated successfully for client {}, audio ID: {}, size: {} bytes, cached: {}", 
+                       clientId, audioId, result.size, result.cached);
 
         } catch (Exception e) {
             logger.error("Error generating TTS for client {}", clientId, e);
@@ -161,50 +192,78 @@ public class TtsController {
     }
 
     @GetMapping("/audio/{id}")
-    public ResponseEntity<byte[]> streamAudio(
+    public ResponseEntity<Resource> streamAudio(
             @PathVariable String id,
             @RequestParam(required = false, defaultValue = "false") boolean download,
-            @RequestParam(required = false, defaultValue = "mp3") String format) {
+            @RequestParam(required = false) String format,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range) {
         
+        // The format parameter is still accepted for old links, but the stored clip knows its own format
         logger.info("Audio request: id={}, download={}, format={}", id, download, format);
 
-        byte[] audioData = audioStore.retrieve(id);
-        if (audioData == null) {
+        StoredAudio audio = audioStore.retrieve(id);
+        if (audio == null) {
             logger.warn("Audio not found for ID: {}", id);
             return ResponseEntity.notFound().build();
         }
 
         HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.valueOf(audio.getContentType()));
         
-        // Set appropriate content type based on format
-        switch (format.toLowerCase()) {
-            case "wav" -> headers.setContentType(MediaType.valueOf("audio/wav"));
-            case "opus" -> headers.setContentType(MediaType.valueOf("audio/opus"));
-            default -> headers.setContentType(MediaType.valueOf("audio/mpeg"));
-        }
-        
-        headers.setContentLength(audioData.length);
-        
-        // Add streaming headers to prevent caching and enable proper audio streaming
-        headers.set("Accept-Ranges", "bytes");
-        headers.set("Cache-Control", "no-cache, no-store, must-revalidate");
-        headers.set("Pragma", "no-cache");
-        headers.set("Expires", "0");
+        // Stored audio never changes, so browsers and CDNs may keep it for as long as the store
+        // does. A matching If-None-Match gets a 304 from Spring before the body is read; ranges
+        // (206 single and multipart, 416 when unsatisfiable) are also handled by Spring's Resource
+        // support, reading each one straight out of the stored bytes.
+        headers.setETag(audio.getEtag());
+        headers.setCacheControl(CacheControl.maxAge(audioStore.getRetention()).cachePublic().immutable());
         headers.set("Access-Control-Allow-Origin", "*");
         
+        Resource body = audio.asResource();
+        if (range != null) {
+            List<HttpRange> ranges = parseRanges(range);
+            if (ranges == null) {
+                // A Range header that doesn't parse is ignored (RFC 9110 14.2) and the whole clip
+                // served. Spring answers 416 for those too, except on an InputStreamResource, which
+                // it never serves ranges of.
+                logger.debug("Ignoring malformed Range header for audio {}: {}", id, range);
+                headers.setContentLength(audio.getLength());
+                body = new InputStreamResource(body);
+            } else if (!isSatisfiable(ranges, body)) {
+                // Spring would answer 416 but still write the whole clip after it
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes */" + audio.getLength())
+                        .build();
+            }
+        }
+
         if (download) {
-            String fileExtension = format.toLowerCase().equals("mp3") ? "mp3" : 
-                                  format.toLowerCase().equals("wav") ? "wav" : 
-                                  format.toLowerCase().equals("opus") ? "opus" : "mp3";
-            headers.setContentDispositionFormData("attachment", "audio_" + id + "." + fileExtension);
+            headers.setContentDispositionFormData("attachment", "audio_" + id + "." + audio.getFormat());
         } else {
             headers.set("Content-Disposition", "inline");
         }
 
-        logger.info("Serving audio: id={}, size={} bytes, download={}, format={}", id, audioData.length, download, format);
+        logger.info("Serving audio: id={}, size={} bytes, download={}, format={}", id, audio.getLength(), download, audio.getFormat());
         return ResponseEntity.ok()
                 .headers(headers)
-                .body(audioData);
+                .body(body);
+    }
+
+    // The ranges asked for, or null if the header isn't a byte-range set Spring can parse
+    private static List<HttpRange> parseRanges(String range) {
+        try {
+            return HttpRange.parseRanges(range);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static boolean isSatisfiable(List<HttpRange> ranges, Resource resource) {
+        try {
+            HttpRange.toResourceRegions(ranges, resource);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
     }
 
     @GetMapping("/health")
@@ -213,8 +272,38 @@ public class TtsController {
         return Map.of(
             "status", "OK",
             "audioCacheSize", audioStore.size(),
+            "audioStore", Map.of(
+                "heapBytes", audioStore.getHeapBytes(),
+                "heapBudget", audioStore.getHeapBudget(),
+                "spilledClips", audioStore.getSpilledCount(),
+                "spilledBytes", audioStore.getSpilledBytes(),
+                "pinnedClips", audioStore.getPinnedCount(),
+                "pinnedBytes", audioStore.getPinnedBytes(),
+                "durableClips", audioStore.getDurableCount(),
+                "durableBytes", audioStore.getDurableBytes()
+            ),
+            "synthesisCache", Map.of(
+                "hits", synthesisService.getCacheHits(),
+                "misses", synthesisService.getCacheMisses(),
+                "hitRatio", synthesisService.getCacheHitRatio(),
+                "coalescedRequests", synthesisService.getCoalescedRequests(),
+                "inFlight", synthesisService.getInFlightCount()
+            ),
+            "upstream", Map.of(
+                "inFlight", upstreamBulkhead.inUse(),
+                "waiting", upstreamBulkhead.waiting(),
+                "maxConcurrency", upstreamBulkhead.getMaxConcurrency()
+            ),
+            "jobQueue", Map.of(
+                "queued", jobQueue.getQueuedCount(),
+                "queuedClients", jobQueue.getQueuedClients(),
+                "running", jobQueue.getRunningCount(),
+                "maxQueued", jobQueue.getMaxQueued()
+            ),
             "rateLimits", Map.of(
                 "enabled", rateLimitProperties.isEnabled(),
+                "store", rateLimitProperties.getStore(),
+                "trackedClients", rateLimitService.getTrackedClients(),
                 "maxRequestsPerMinute", rateLimitProperties.getMaxRequestsPerMinute(),
                 "maxRequestsPerHour", rateLimitProperties.getMaxRequestsPerHour(),
                 "maxCharactersPerHour", rateLimitProperties.getMaxCharactersPerHour()
@@ -279,6 +368,13 @@ public class TtsController {
             // Use the normalized voice for API call
             voice = normalizedVoice;
 
+            if (text.length() > maxTextLength) {
+                return ResponseEntity.badRequest().body(Map.of(
+                    "error", "Text is too long: " + text.length() + " characters",
+                    "maxCharacters", maxTextLength
+                ));
+            }
+
             // Rate limiting check
             if (!rateLimitService.isAllowed(clientId, text.length())) {
                 RateLimitService.RateLimitInfo rateLimitInfo = rateLimitService.getRateLimitInfo(clientId);
@@ -297,15 +393,16 @@ public class TtsController {
             }
 
             // Generate speech
-            byte[] audioData = openAIService.generateSpeech(text, voice, style, format);
-            String audioId = audioStore.store(audioData);
+            SynthesisService.SynthesisResult result = synthesisService.synthesize(text, voice, style, format);
+            String audioId = result.audioId;
 
             RateLimitService.RateLimitInfo rateLimitInfo = rateLimitService.getRateLimitInfo(clientId);
 
             return ResponseEntity.ok().body(Map.of(
                     "audioId", audioId,
                     "audioUrl", "/audio/" + audioId + "?format=" + format,
-                    "size", audioData.length,
+                    "size", result.size,
+                    "cached", result.cached,
                     "rateLimitInfo", Map.of(
                         "remainingMinuteRequests", rateLimitInfo.getRemainingMinuteRequests(),
                         "remainingHourlyRequests", rateLimitInfo.getRemainingHourlyRequests(),
@@ -313,12 +410,330 @@ public class TtsController {
                     )
             ));
 
+        } catch (UpstreamBusyException e) {
+            logger.warn("Upstream busy, rejecting quick TTS for client {}", clientId);
+            return upstreamBusy(e);
         } catch (Exception e) {
             logger.error("Error generating quick TTS for client {}", clientId, e);
             return ResponseEntity.internalServerError().body(Map.of("error", "Failed to generate voice: " + e.getMessage()));
         }
     }
 
+    @PostMapping("/api/stream-tts")
+    @ResponseBody
+    public ResponseEntity<StreamingResponseBody> streamTts(
+            @RequestParam String text,
+            @RequestParam String voice,
+            @RequestParam(required = false) String style,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+
+        String clientId = clientIdentifierService.getClientIdentifier(request);
+        logger.info("Streaming TTS request from client {}: voice='{}', style={}, text_length={}",
+                   clientId, voice, style, text.length());
+
+        // The stream is one upstream call and is never chunked, so it is limited to what a single
+        // request can voice; longer text goes through the other endpoints
+        String normalizedVoice = voice.trim().toLowerCase();
+        int maxStreamLength = synthesisService.getSingleRequestCharacters();
+        String error = validationError(text, normalizedVoice, "wav", maxStreamLength);
+        if (error != null) {
+            logger.warn("Rejected stream-tts request from client {}: {}", clientId, error);
+            return jsonResponse(400, Map.of(
+                "error", error,
+                "availableVoices", AVAILABLE_VOICES,
+                "maxCharacters", maxStreamLength
+            ));
+        }
+
+        if (!rateLimitService.isAllowed(clientId, text.length())) {
+            RateLimitService.RateLimitInfo rateLimitInfo = rateLimitService.getRateLimitInfo(clientId);
+            return jsonResponse(429, Map.of(
+                "error", "Rate limit exceeded",
+                "remainingMinuteRequests", rateLimitInfo.getRemainingMinuteRequests(),
+                "remainingHourlyRequests", rateLimitInfo.getRemainingHourlyRequests(),
+                "remainingHourlyCharacters", rateLimitInfo.getRemainingHourlyCharacters()
+            ));
+        }
+
+        // With the synthesis cache on, the id is known before generation starts, so the client can
+        // replay or download the assembled file from /audio/{id} once the stream ends. Without it
+        // the clip is stored under a fresh id that only exists after the stream.
+        String audioId = synthesisService.isCacheEnabled()
+                ? synthesisService.streamingAudioId(text, normalizedVoice, style) : null;
+
+        StreamingResponseBody body = out -> {
+            try {
+                synthesisService.streamSynthesis(text, normalizedVoice, style, out);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Streaming synthesis interrupted", e);
+            } catch (UpstreamBusyException e) {
+                // Nothing has been written yet, so the audio response can still be turned into a 503.
+                // Exception handlers can't do it: by now the response is already declared audio/wav.
+                logger.warn("Upstream busy, rejecting streaming TTS for client {}", clientId);
+                if (response.isCommitted()) {
+                    throw new IOException(e);
+                }
+                response.reset();
+                response.setStatus(503);
+                response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+                response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+                JSON.writeValue(out, Map.of("error", e.getMessage()));
+            } catch (Exception e) {
+                // If audio was already sent the headers are committed, and all we can do is cut the stream short
+                logger.error("Error streaming TTS for client {}", clientId, e);
+                throw e instanceof IOException ioException ? ioException : new IOException(e);
+            }
+        };
+
+        ResponseEntity.BodyBuilder ok = ResponseEntity.ok()
+                .contentType(MediaType.valueOf("audio/wav"))
+                .header("Cache-Control", "no-store");
+        if (audioId != null) {
+            ok.header("X-Audio-Id", audioId)
+                    .header("X-Audio-Url", "/audio/" + audioId + "?format=wav");
+        }
+        return ok.body(body);
+    }
+
+    // Spring only streams a ResponseEntity declared with a StreamingResponseBody body, so the
+    // streaming endpoint's error responses have to be written as one too
+    private static ResponseEntity<StreamingResponseBody> jsonResponse(int status, Map<String, Object> body) {
+        return ResponseEntity.status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> JSON.writeValue(out, body));
+    }
+
+    @PostMapping("/api/batch-tts")
+    @ResponseBody
+    public ResponseEntity<?> batchTts(@RequestBody BatchService.BatchRequest batch, HttpServletRequest request) {
+        String clientId = clientIdentifierService.getClientIdentifier(request);
+        List<BatchService.ItemRequest> items = batch.items() != null ? batch.items() : List.of();
+        logger.info("Batch TTS request from client {}: {} items", clientId, items.size());
+
+        if (items.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Batch has no items"));
+        }
+        if (items.size() > batchService.getMaxItems()) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "error", "Batch has too many items: " + items.size(),
+                "maxItems", batchService.getMaxItems()
+            ));
+        }
+
+        // Validate everything up front and report every bad item at once, so nothing is charged
+        // or started for a batch that would partly fail validation
+        List<Map<String, Object>> itemErrors = new ArrayList<>();
+        List<BatchService.ItemRequest> normalized = new ArrayList<>(items.size());
+        long totalCharacters = 0;
+        for (int i = 0; i < items.size(); i++) {
+            BatchService.ItemRequest item = items.get(i);
+            String text = item.text();
+            String voice = item.voice() != null ? item.voice().trim().toLowerCase() : "";
+            String format = item.format() != null ? item.format().trim().toLowerCase() : "mp3";
+            String error = validationError(text, voice, format);
+            if (error != null) {
+                itemErrors.add(Map.of("index", i, "error", error));
+            } else {
+                normalized.add(new BatchService.ItemRequest(text, voice, item.style(), format));
+                totalCharacters += text.length();
+            }
+        }
+        if (!itemErrors.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "error", "Invalid batch items",
+                "itemErrors", itemErrors,
+                "availableVoices", AVAILABLE_VOICES,
+                "maxCharacters", maxTextLength
+            ));
+        }
+
+        // One limiter check for the whole batch: it counts as one request, and all of its characters
+        if (!rateLimitService.isAllowed(clientId, (int) Math.min(Integer.MAX_VALUE, totalCharacters))) {
+            RateLimitService.RateLimitInfo rateLimitInfo = rateLimitService.getRateLimitInfo(clientId);
+            return ResponseEntity.status(429).body(Map.of(
+                "error", "Rate limit exceeded",
+                "requestedCharacters", totalCharacters,
+                "remainingMinuteRequests", rateLimitInfo.getRemainingMinuteRequests(),
+                "remainingHourlyRequests", rateLimitInfo.getRemainingHourlyRequests(),
+                "remainingHourlyCharacters", rateLimitInfo.getRemainingHourlyCharacters()
+            ));
+        }
+
+        BatchService.BatchJob job = batchService.submit(clientId, normalized);
+        return ResponseEntity.accepted()
+                .header(HttpHeaders.LOCATION, "/api/batch-tts/" + job.jobId)
+                .body(batchStatus(job));
+    }
+
+    @GetMapping("/api/batch-tts/{jobId}")
+    @ResponseBody
+    public ResponseEntity<?> batchTtsStatus(@PathVariable String jobId) {
+        BatchService.BatchJob job = batchService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "Batch job not found or expired"));
+        }
+        return ResponseEntity.ok(batchStatus(job));
+    }
+
+    // Clips are added to the archive in item order as they finish, so this can be requested
+    // right after submitting and completes when the last item does
+    @GetMapping("/api/batch-tts/{jobId}/zip")
+    @ResponseBody
+    public ResponseEntity<StreamingResponseBody> batchTtsZip(@PathVariable String jobId) {
+        BatchService.BatchJob job = batchService.getJob(jobId);
+        if (job == null) {
+            return jsonResponse(404, Map.of("error", "Batch job not found or expired"));
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.valueOf("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"batch-" + job.jobId + ".zip\"")
+                .header("Cache-Control", "no-store")
+                .body(out -> batchService.writeZip(job, out));
+    }
+
+    private static Map<String, Object> batchStatus(BatchService.BatchJob job) {
+        List<Map<String, Object>> items = new ArrayList<>(job.items.size());
+        for (BatchService.BatchItem item : job.items) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("index", item.index);
+            entry.put("status", item.getStatus());
+            if (item.getAudioId() != null) {
+                entry.put("audioId", item.getAudioId());
+                entry.put("audioUrl", "/audio/" + item.getAudioId() + "?format=" + item.getFormat());
+                entry.put("size", item.getSize());
+                entry.put("cached", item.isCached());
+            }
+            if (item.getError() != null) {
+                entry.put("error", item.getError());
+            }
+            items.add(entry);
+        }
+
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("jobId", job.jobId);
+        status.put("status", job.isDone() ? "COMPLETED" : "RUNNING");
+        status.put("total", job.items.size());
+        status.put("succeeded", job.count(BatchService.ItemStatus.SUCCEEDED));
+        status.put("failed", job.count(BatchService.ItemStatus.FAILED));
+        status.put("statusUrl", "/api/batch-tts/" + job.jobId);
+        status.put("zipUrl", "/api/batch-tts/" + job.jobId + "/zip");
+        status.put("items", items);
+        return status;
+    }
+
+    // Why a request can't be synthesized, or null if it can; voice and format must be normalized
+    private String validationError(String text, String voice, String format) {
+        return validationError(text, voice, format, maxTextLength);
+    }
+
+    private String validationError(String text, String voice, String format, int maxLength) {
+        if (text == null || text.trim().isEmpty()) {
+            return "Text cannot be empty";
+        }
+        if (text.length() > maxLength) {
+            return "Text is too long: " + text.length() + " characters";
+        }
+        if (!AVAILABLE_VOICES.contains(voice)) {
+            return "Invalid voice selected: " + voice;
+        }
+        if (!format.equals("mp3") && !format.equals("wav") && !format.equals("opus")) {
+            return "Invalid format: " + format;
+        }
+        return null;
+    }
+
+    @PostMapping("/api/tts-jobs")
+    @ResponseBody
+    public ResponseEntity<?> submitTtsJob(
+            @RequestParam String text,
+            @RequestParam String voice,
+            @RequestParam(required = false) String style,
+            @RequestParam(required = false, defaultValue = "mp3") String format,
+            HttpServletRequest request) {
+
+        String clientId = clientIdentifierService.getClientIdentifier(request);
+        String normalizedVoice = voice.trim().toLowerCase();
+        String normalizedFormat = format.trim().toLowerCase();
+        logger.info("TTS job request from client {}: voice='{}', style={}, format={}, text_length={}",
+                   clientId, voice, style, format, text.length());
+
+        String error = validationError(text, normalizedVoice, normalizedFormat);
+        if (error != null) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "error", error,
+                "availableVoices", AVAILABLE_VOICES,
+                "maxCharacters", maxTextLength
+            ));
+        }
+
+        // Charged only once the queue has room, so a full backlog doesn't use up the client's limit
+        SynthesisJobQueue.Job job = jobQueue.submit(clientId, text, normalizedVoice, style, normalizedFormat,
+                () -> rateLimitService.isAllowed(clientId, text.length()));
+        if (job == null) {
+            RateLimitService.RateLimitInfo rateLimitInfo = rateLimitService.getRateLimitInfo(clientId);
+            return ResponseEntity.status(429).body(Map.of(
+                "error", "Rate limit exceeded",
+                "remainingMinuteRequests", rateLimitInfo.getRemainingMinuteRequests(),
+                "remainingHourlyRequests", rateLimitInfo.getRemainingHourlyRequests(),
+                "remainingHourlyCharacters", rateLimitInfo.getRemainingHourlyCharacters()
+            ));
+        }
+        return ResponseEntity.accepted()
+                .header(HttpHeaders.LOCATION, "/api/tts-jobs/" + job.jobId)
+                .body(jobStatus(job));
+    }
+
+    // Long-poll with ?wait=30 to get the answer as soon as the job finishes instead of polling
+    @GetMapping("/api/tts-jobs/{jobId}")
+    @ResponseBody
+    public ResponseEntity<?> ttsJobStatus(
+            @PathVariable String jobId,
+            @RequestParam(required = false, defaultValue = "0") long wait) throws InterruptedException {
+        SynthesisJobQueue.Job job = jobQueue.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "Job not found or expired"));
+        }
+        jobQueue.awaitCompletion(job, Duration.ofSeconds(Math.clamp(wait, 0, MAX_JOB_WAIT_SECONDS)));
+        return ResponseEntity.ok(jobStatus(job));
+    }
+
+    private static Map<String, Object> jobStatus(SynthesisJobQueue.Job job) {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("jobId", job.jobId);
+        status.put("status", job.getStatus());
+        status.put("statusUrl", "/api/tts-jobs/" + job.jobId);
+        SynthesisService.SynthesisResult result = job.getResult();
+        if (result != null) {
+            status.put("audioId", result.audioId);
+            status.put("audioUrl", "/audio/" + result.audioId + "?format=" + job.getFormat());
+            status.put("size", result.size);
+            status.put("cached", result.cached);
+        }
+        if (job.getError() != null) {
+            status.put("error", job.getError());
+        }
+        return status;
+    }
+
+    @ExceptionHandler(UpstreamBusyException.class)
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> upstreamBusy(UpstreamBusyException e) {
+        return ResponseEntity.status(503)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(Map.of("error", e.getMessage()));
+    }
+
+    // A full client backlog is that client's problem (429); a full queue is everyone's (503)
+    @ExceptionHandler(JobQueueFullException.class)
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> jobQueueFull(JobQueueFullException e) {
+        return ResponseEntity.status(e.isClientLimit() ? 429 : 503)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(Map.of("error", e.getMessage()));
+    }
+
     private String formatFileSize(long bytes) {
         if (bytes < 1024) return bytes + " B";
         if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
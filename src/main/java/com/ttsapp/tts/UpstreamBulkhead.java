@@ -0,0 +1,72 @@
+package com.ttsapp.tts;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Caps how many upstream calls run at once. With virtual threads the web tier no longer runs out
+// of threads, so this is what keeps a burst of long generations from piling onto Azure OpenAI.
+@Component
+public class UpstreamBulkhead {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamBulkhead.class);
+
+    private final int maxConcurrency;
+    private final Duration queueTimeout;
+    private final Semaphore permits;
+
+    public UpstreamBulkhead(
+            @Value("${app.upstream.max-concurrency:32}") int maxConcurrency,
+            @Value("${app.upstream.queue-timeout:30s}") Duration queueTimeout,
+            MeterRegistry meterRegistry) {
+        this.maxConcurrency = maxConcurrency;
+        this.queueTimeout = queueTimeout;
+        this.permits = new Semaphore(maxConcurrency, true);
+
+        Gauge.builder("tts.upstream.in.flight", this, UpstreamBulkhead::inUse).register(meterRegistry);
+        Gauge.builder("tts.upstream.waiting", this, UpstreamBulkhead::waiting).register(meterRegistry);
+
+        logger.info("Upstream bulkhead initialized with max concurrency: {}, queue timeout: {}", maxConcurrency, queueTimeout);
+    }
+
+    public void acquire() throws InterruptedException {
+        if (!permits.tryAcquire(queueTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            logger.warn("Upstream bulkhead full: {} calls in flight, {} waiting", inUse(), waiting());
+            throw new UpstreamBusyException("Speech generation is at capacity, please try again shortly",
+                    Math.max(1, queueTimeout.toSeconds()));
+        }
+    }
+
+    // Takes a slot only if one is free right now and nobody is queued for it (hedged requests)
+    public boolean tryAcquire() {
+        try {
+            return permits.tryAcquire(0, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int inUse() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    public int waiting() {
+        return permits.getQueueLength();
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+}
@@ -0,0 +1,22 @@
+package com.ttsapp.tts;
+
+// Thrown when every upstream slot is taken and none freed up within the queue timeout, when the
+// circuit breaker is open, or when Azure OpenAI kept throttling after the retries
+public class UpstreamBusyException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public UpstreamBusyException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public UpstreamBusyException(String message, long retryAfterSeconds, Throwable cause) {
+        super(message, cause);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
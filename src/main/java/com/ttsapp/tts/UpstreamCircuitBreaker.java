@@ -0,0 +1,173 @@
+package com.ttsapp.tts;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Count-based circuit breaker over the outcomes of the last few upstream calls. While it is open,
+// calls fail at once instead of queueing behind a deployment that is down; after openDuration a
+// few trial calls decide whether to close it again or stay open for another round.
+class UpstreamCircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamCircuitBreaker.class);
+
+    enum State {
+        CLOSED,
+        HALF_OPEN,
+        OPEN
+    }
+
+    private final boolean enabled;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openNanos;
+    private final int halfOpenCalls;
+
+    // Ring of recent outcomes while closed, true for a failure; guarded by this
+    private final boolean[] window;
+    private int windowIndex;
+    private int windowCount;
+    private int windowFailures;
+
+    private volatile State state = State.CLOSED;
+    private long openedAtNanos;
+    private int halfOpenInFlight;
+    private int halfOpenSucceeded;
+
+    private final Counter rejected;
+
+    UpstreamCircuitBreaker(UpstreamResilienceProperties.CircuitBreaker properties, MeterRegistry meterRegistry) {
+        this.enabled = properties.isEnabled();
+        this.window = new boolean[Math.max(1, properties.getWindowSize())];
+        this.minimumCalls = Math.max(1, Math.min(properties.getMinimumCalls(), window.length));
+        this.failureRateThreshold = properties.getFailureRateThreshold();
+        this.openNanos = properties.getOpenDuration().toNanos();
+        this.halfOpenCalls = Math.max(1, properties.getHalfOpenCalls());
+
+        this.rejected = Counter.builder("tts.upstream.circuit.rejected")
+                .description("Upstream calls failed fast because the circuit was open")
+                .register(meterRegistry);
+        Gauge.builder("tts.upstream.circuit.state", this, breaker -> breaker.getState().ordinal())
+                .description("0 closed, 1 half-open, 2 open")
+                .register(meterRegistry);
+    }
+
+    // Throws UpstreamBusyException when the call may not go out; a permitted call must report
+    // exactly one of recordSuccess, recordFailure or recordIgnored
+    void acquirePermission() {
+        if (!tryAcquirePermission()) {
+            rejected.increment();
+            throw new UpstreamBusyException("Speech generation is temporarily unavailable, please try again shortly",
+                    retryAfterSeconds());
+        }
+    }
+
+    synchronized boolean tryAcquirePermission() {
+        if (!enabled) {
+            return true;
+        }
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAtNanos < openNanos) {
+                return false;
+            }
+            transition(State.HALF_OPEN);
+            halfOpenInFlight = 0;
+            halfOpenSucceeded = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenInFlight >= halfOpenCalls) {
+                return false;
+            }
+            halfOpenInFlight++;
+        }
+        return true;
+    }
+
+    synchronized void recordSuccess() {
+        if (!enabled) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            halfOpenInFlight = Math.max(0, halfOpenInFlight - 1);
+            if (++halfOpenSucceeded >= halfOpenCalls) {
+                resetWindow();
+                transition(State.CLOSED);
+            }
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    synchronized void recordFailure() {
+        if (!enabled) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            open();
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (windowCount >= minimumCalls && (double) windowFailures / windowCount >= failureRateThreshold) {
+                open();
+            }
+        }
+        // Calls that started before the circuit opened and fail afterwards change nothing
+    }
+
+    // The call ended without saying anything about the upstream's health (rejected by the bulkhead,
+    // cancelled, throttled), but it may have held a trial slot
+    synchronized void recordIgnored() {
+        if (enabled && state == State.HALF_OPEN) {
+            halfOpenInFlight = Math.max(0, halfOpenInFlight - 1);
+        }
+    }
+
+    State getState() {
+        return state;
+    }
+
+    private void record(boolean failure) {
+        if (windowCount == window.length) {
+            if (window[windowIndex]) {
+                windowFailures--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = failure;
+        if (failure) {
+            windowFailures++;
+        }
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+
+    private void open() {
+        openedAtNanos = System.nanoTime();
+        resetWindow();
+        transition(State.OPEN);
+    }
+
+    private void resetWindow() {
+        windowIndex = 0;
+        windowCount = 0;
+        windowFailures = 0;
+    }
+
+    private void transition(State next) {
+        if (state != next) {
+            State previous = state;
+            state = next;
+            if (next == State.OPEN) {
+                logger.warn("Upstream circuit {} -> OPEN: failing calls fast for {} ms", previous, openNanos / 1_000_000);
+            } else {
+                logger.info("Upstream circuit {} -> {}", previous, next);
+            }
+        }
+    }
+
+    private synchronized long retryAfterSeconds() {
+        long remaining = openNanos - (System.nanoTime() - openedAtNanos);
+        return Math.max(1, (long) Math.ceil(remaining / 1e9));
+    }
+}
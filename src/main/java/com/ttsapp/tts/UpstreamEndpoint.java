@@ -0,0 +1,92 @@
+package com.ttsapp.tts;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// One Azure OpenAI deployment requests can be routed to: its own URI, request codec (the body
+// names its deployment), HTTP client and token provider, plus the load and health figures the
+// router ranks it by
+class UpstreamEndpoint {
+
+    // Assumed latency until the first response has been timed, so a new endpoint gets traffic
+    private static final double INITIAL_LATENCY_MILLIS = 1000;
+    // Weight of the newest sample in the moving averages
+    private static final double SMOOTHING = 0.2;
+    // An endpoint throttling every call ranks as this many times busier than one that throttles none
+    private static final double THROTTLE_PENALTY = 4;
+
+    final String name;
+    final URI chatCompletionsUri;
+    final ChatCompletionsCodec codec;
+    final HttpClient httpClient;
+    // Null when requests to this endpoint are sent without credentials
+    final AzureTokenProvider tokenProvider;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+    // Updated under this, read without it
+    private volatile double latencyMillis = INITIAL_LATENCY_MILLIS;
+    private volatile double throttleRate;
+    private volatile long ejectedUntilNanos = System.nanoTime();
+
+    UpstreamEndpoint(String name, URI chatCompletionsUri, ChatCompletionsCodec codec, HttpClient httpClient,
+                     AzureTokenProvider tokenProvider) {
+        this.name = name;
+        this.chatCompletionsUri = chatCompletionsUri;
+        this.codec = codec;
+        this.httpClient = httpClient;
+        this.tokenProvider = tokenProvider;
+    }
+
+    void begin() {
+        outstanding.incrementAndGet();
+    }
+
+    void end() {
+        outstanding.decrementAndGet();
+    }
+
+    // Only successful calls feed the latency average: a 429 comes back fast and would make a
+    // throttling endpoint look quick
+    synchronized void recordResponse(int statusCode, long latencyNanos) {
+        if (statusCode == 200) {
+            latencyMillis += SMOOTHING * (latencyNanos / 1e6 - latencyMillis);
+        }
+        throttleRate += SMOOTHING * ((statusCode == 429 ? 1 : 0) - throttleRate);
+    }
+
+    // Lower is better: least outstanding requests, scaled by how slow and how throttled the endpoint is
+    double score() {
+        return (outstanding.get() + 1) * latencyMillis * (1 + THROTTLE_PENALTY * throttleRate);
+    }
+
+    // A second 429 during an ejection can only extend it
+    synchronized void eject(Duration duration) {
+        long until = System.nanoTime() + duration.toNanos();
+        if (until - ejectedUntilNanos > 0) {
+            ejectedUntilNanos = until;
+        }
+    }
+
+    // Readmitted as soon as the ejection has run out
+    boolean isEjected(long nowNanos) {
+        return nowNanos - ejectedUntilNanos < 0;
+    }
+
+    long ejectedUntilNanos() {
+        return ejectedUntilNanos;
+    }
+
+    int getOutstanding() {
+        return outstanding.get();
+    }
+
+    double getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    double getThrottleRate() {
+        return throttleRate;
+    }
+}
@@ -0,0 +1,63 @@
+package com.ttsapp.tts;
+
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+// A non-200 answer from Azure OpenAI, with the delay it asked for (if any) before trying again
+public class UpstreamException extends RuntimeException {
+
+    private final int statusCode;
+    // Null when the response carried neither retry-after-ms nor Retry-After
+    private final Duration retryAfter;
+
+    public UpstreamException(int statusCode, String errorBody, Duration retryAfter) {
+        super("OpenAI API error: " + statusCode + " - " + errorBody);
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    // Throttling, timeouts and server-side errors can succeed on a second try; anything else
+    // (bad request, auth, content filter) fails the same way every time
+    public boolean isRetryable() {
+        return statusCode == 408 || statusCode == 429 || statusCode >= 500;
+    }
+
+    // Azure OpenAI sends retry-after-ms alongside Retry-After; the former is more precise. Retry-After
+    // is either delta-seconds or an HTTP date.
+    static Duration retryAfter(HttpHeaders headers) {
+        try {
+            var millis = headers.firstValueAsLong("retry-after-ms");
+            if (millis.isPresent() && millis.getAsLong() >= 0) {
+                return Duration.ofMillis(millis.getAsLong());
+            }
+        } catch (NumberFormatException e) {
+            // Fall back to Retry-After
+        }
+        String value = headers.firstValue("Retry-After").map(String::trim).orElse(null);
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            try {
+                Duration until = Duration.between(ZonedDateTime.now(),
+                        ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME));
+                return until.isNegative() ? Duration.ZERO : until;
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.ttsapp.tts;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// What happens around each Azure OpenAI call: the circuit breaker decides whether it goes out at
+// all, transient failures (throttling, 5xx, I/O errors) are retried after a jittered backoff or
+// the delay the server asked for, and, if enabled, a call still running past the recent p95
+// latency gets a hedged duplicate whose first success wins.
+@Component
+public class UpstreamResilience {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamResilience.class);
+
+    // Recent successful call latencies kept for the hedging threshold
+    private static final int LATENCY_SAMPLES = 256;
+    // The p95 is recomputed after this many new samples rather than on every call
+    private static final int PERCENTILE_REFRESH = 16;
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Duration maxRetryAfter;
+    private final boolean hedgeEnabled;
+    private final long hedgeMinDelayMillis;
+    private final int hedgeMinSamples;
+    private final UpstreamCircuitBreaker circuitBreaker;
+    // Retries and hedges are scheduled from completion callbacks; they may block on the bulkhead
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Guarded by this
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private int latencyIndex;
+    private int latencyCount;
+    private int samplesSincePercentile;
+    private volatile long p95Millis = -1;
+
+    private final MeterRegistry meterRegistry;
+    private final Counter hedgesSent;
+    private final Counter hedgesWon;
+
+    public UpstreamResilience(UpstreamResilienceProperties properties, MeterRegistry meterRegistry) {
+        UpstreamResilienceProperties.Retry retry = properties.getRetry();
+        this.maxAttempts = Math.max(1, retry.getMaxAttempts());
+        this.initialBackoffMillis = Math.max(1, retry.getInitialBackoff().toMillis());
+        this.maxBackoffMillis = Math.max(initialBackoffMillis, retry.getMaxBackoff().toMillis());
+        this.maxRetryAfter = retry.getMaxRetryAfter();
+        this.hedgeEnabled = properties.getHedge().isEnabled();
+        this.hedgeMinDelayMillis = properties.getHedge().getMinDelay().toMillis();
+        this.hedgeMinSamples = Math.min(LATENCY_SAMPLES, Math.max(1, properties.getHedge().getMinSamples()));
+        this.circuitBreaker = new UpstreamCircuitBreaker(properties.getCircuitBreaker(), meterRegistry);
+
+        this.meterRegistry = meterRegistry;
+        this.hedgesSent = Counter.builder("tts.upstream.hedges").tag("result", "sent").register(meterRegistry);
+        this.hedgesWon = Counter.builder("tts.upstream.hedges").tag("result", "won").register(meterRegistry);
+        Gauge.builder("tts.upstream.latency.p95", this, resilience -> resilience.p95Millis)
+                .description("p95 of recent upstream call latencies, the hedging threshold")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+
+        logger.info("Upstream resilience initialized: {} attempts, backoff {}-{} ms, circuit breaker {}, hedging {}",
+                maxAttempts, initialBackoffMillis, maxBackoffMillis,
+                properties.getCircuitBreaker().isEnabled() ? "on" : "off", hedgeEnabled ? "on" : "off");
+    }
+
+    // One attempt at the upstream call; a hedge must not wait for capacity
+    @FunctionalInterface
+    public interface Attempt<T> {
+        CompletableFuture<T> send(boolean hedge);
+    }
+
+    // Runs the call with retries and (if enabled) hedging. The first attempt starts on the calling
+    // thread, so its wait for a bulkhead slot happens there as it did before; later attempts start
+    // on virtual threads.
+    public <T> CompletableFuture<T> execute(Attempt<T> attempt) {
+        Call<T> call = new Call<>(attempt);
+        call.start(1);
+        return call.result;
+    }
+
+    // For callers that drive their own attempts (streaming): throws UpstreamBusyException while
+    // the circuit is open, otherwise the attempt must be reported to record
+    public void acquirePermission() {
+        circuitBreaker.acquirePermission();
+    }
+
+    // Reports how a permitted attempt ended, null meaning success
+    public void record(Throwable error) {
+        Throwable cause = unwrap(error);
+        if (cause == null) {
+            circuitBreaker.recordSuccess();
+        } else if (isUpstreamFailure(cause)) {
+            circuitBreaker.recordFailure();
+        } else {
+            circuitBreaker.recordIgnored();
+        }
+    }
+
+    // How long to wait before attempt number (attempt + 1), or null when the error should be
+    // passed on: not transient, out of attempts, or the server asked for too long a wait
+    public Duration retryDelay(int attempt, Throwable error) {
+        Throwable cause = unwrap(error);
+        if (attempt >= maxAttempts || !isRetryable(cause)) {
+            return null;
+        }
+        Duration delay;
+        if (cause instanceof UpstreamException upstream && upstream.getRetryAfter() != null) {
+            if (upstream.getRetryAfter().compareTo(maxRetryAfter) > 0) {
+                return null;
+            }
+            // Wait at least as long as asked, plus a little so callers throttled together spread out
+            delay = upstream.getRetryAfter().plusMillis(ThreadLocalRandom.current().nextLong(initialBackoffMillis));
+        } else {
+            long ceiling = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 20));
+            delay = Duration.ofMillis(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        }
+        Counter.builder("tts.upstream.retries")
+                .tag("reason", cause instanceof UpstreamException upstream ? String.valueOf(upstream.getStatusCode()) : "io_error")
+                .register(meterRegistry)
+                .increment();
+        logger.warn("Upstream attempt {} of {} failed ({}), retrying in {} ms",
+                attempt, maxAttempts, cause.getMessage(), delay.toMillis());
+        return delay;
+    }
+
+    // The error to hand to the caller once no more attempts will be made. Throttling that outlasted
+    // the retries becomes UpstreamBusyException, so clients get a 503 with Retry-After rather than a 500.
+    public Throwable finalError(Throwable error) {
+        Throwable cause = unwrap(error);
+        if (cause instanceof UpstreamException upstream
+                && (upstream.getStatusCode() == 429 || upstream.getStatusCode() == 503)) {
+            long retryAfterSeconds = upstream.getRetryAfter() != null
+                    ? Math.max(1, (long) Math.ceil(upstream.getRetryAfter().toMillis() / 1000.0))
+                    : Math.max(1, maxBackoffMillis / 1000);
+            return new UpstreamBusyException("Speech generation is at capacity, please try again shortly",
+                    retryAfterSeconds, upstream);
+        }
+        return cause;
+    }
+
+    // Throttling is the upstream protecting itself, not failing, so only errors and timeouts count
+    // toward opening the circuit
+    private static boolean isUpstreamFailure(Throwable cause) {
+        if (cause instanceof UpstreamException upstream) {
+            return upstream.getStatusCode() >= 500 || upstream.getStatusCode() == 408;
+        }
+        return cause instanceof IOException;
+    }
+
+    private static boolean isRetryable(Throwable cause) {
+        if (cause instanceof UpstreamException upstream) {
+            return upstream.isRetryable();
+        }
+        return cause instanceof IOException;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof UncheckedIOException unchecked) {
+            return unchecked.getCause();
+        }
+        return cause;
+    }
+
+    private synchronized void recordLatency(long millis) {
+        latencies[latencyIndex] = millis;
+        latencyIndex = (latencyIndex + 1) % LATENCY_SAMPLES;
+        latencyCount = Math.min(LATENCY_SAMPLES, latencyCount + 1);
+        if (++samplesSincePercentile >= PERCENTILE_REFRESH || p95Millis < 0) {
+            samplesSincePercentile = 0;
+            long[] sorted = Arrays.copyOf(latencies, latencyCount);
+            Arrays.sort(sorted);
+            p95Millis = sorted[(int) Math.ceil(sorted.length * 0.95) - 1];
+        }
+    }
+
+    // -1 until there are enough samples to hedge on
+    private synchronized long hedgeDelayMillis() {
+        if (latencyCount < hedgeMinSamples) {
+            return -1;
+        }
+        return Math.max(hedgeMinDelayMillis, p95Millis);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // One call through its attempts. A round is one attempt plus at most one hedge of it; the next
+    // round starts only once every attempt of the current one has failed.
+    private final class Call<T> {
+
+        final Attempt<T> attempt;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        // Guarded by this
+        int attemptNumber;
+        long roundStartNanos;
+        int outstanding;
+        CompletableFuture<T> primary;
+        CompletableFuture<T> hedge;
+        Throwable lastError;
+
+        Call(Attempt<T> attempt) {
+            this.attempt = attempt;
+        }
+
+        void start(int number) {
+            try {
+                circuitBreaker.acquirePermission();
+            } catch (UpstreamBusyException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            synchronized (this) {
+                attemptNumber = number;
+                roundStartNanos = System.nanoTime();
+                outstanding = 1;
+                hedge = null;
+            }
+            CompletableFuture<T> sent = send(false);
+            synchronized (this) {
+                primary = sent;
+            }
+            sent.whenComplete((value, error) -> onComplete(sent, false, value, error));
+
+            long hedgeDelay = hedgeEnabled ? hedgeDelayMillis() : -1;
+            if (hedgeDelay >= 0 && !sent.isDone()) {
+                CompletableFuture.delayedExecutor(hedgeDelay, TimeUnit.MILLISECONDS, executor)
+                        .execute(() -> hedge(number));
+            }
+        }
+
+        private CompletableFuture<T> send(boolean isHedge) {
+            try {
+                return attempt.send(isHedge);
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        private void hedge(int number) {
+            synchronized (this) {
+                if (result.isDone() || attemptNumber != number || hedge != null || outstanding == 0) {
+                    return;
+                }
+                // Only hedge against a slow upstream, not one that is already failing
+                if (circuitBreaker.getState() != UpstreamCircuitBreaker.State.CLOSED
+                        || !circuitBreaker.tryAcquirePermission()) {
+                    return;
+                }
+                outstanding++;
+            }
+            CompletableFuture<T> sent = send(true);
+            synchronized (this) {
+                hedge = sent;
+            }
+            hedgesSent.increment();
+            logger.debug("Upstream call passed {} ms, sent a hedged request", hedgeDelayMillis());
+            sent.whenComplete((value, error) -> onComplete(sent, true, value, error));
+            // The primary may have succeeded while the hedge was being sent
+            if (result.isDone()) {
+                sent.cancel(true);
+            }
+        }
+
+        private void onComplete(CompletableFuture<T> sent, boolean isHedge, T value, Throwable error) {
+            if (error == null) {
+                circuitBreaker.recordSuccess();
+                CompletableFuture<T> other;
+                long elapsedMillis;
+                synchronized (this) {
+                    outstanding--;
+                    other = isHedge ? primary : hedge;
+                    // Since the round began: when a hedge wins, that is a lower bound on how long
+                    // the primary would have taken, which keeps slow calls in the percentile
+                    elapsedMillis = (System.nanoTime() - roundStartNanos) / 1_000_000;
+                }
+                if (result.complete(value)) {
+                    recordLatency(elapsedMillis);
+                    if (isHedge) {
+                        hedgesWon.increment();
+                    }
+                    if (other != null && other != sent) {
+                        other.cancel(true);
+                    }
+                }
+                return;
+            }
+
+            if (unwrap(error) instanceof CancellationException) {
+                circuitBreaker.recordIgnored();
+            } else {
+                record(error);
+            }
+            int number;
+            Throwable reported;
+            synchronized (this) {
+                outstanding--;
+                // Prefer the primary's error; a hedge failing for lack of capacity says little
+                if (lastError == null || !isHedge) {
+                    lastError = error;
+                }
+                if (outstanding > 0 || result.isDone()) {
+                    return;
+                }
+                number = attemptNumber;
+                reported = lastError;
+                lastError = null;
+            }
+            Duration delay = retryDelay(number, reported);
+            if (delay == null) {
+                result.completeExceptionally(finalError(reported));
+                return;
+            }
+            CompletableFuture.delayedExecutor(delay.toMillis(), TimeUnit.MILLISECONDS, executor)
+                    .execute(() -> start(number + 1));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.ttsapp.tts;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.List;
+
+// Picks the endpoint for each upstream call: the one with the fewest outstanding requests,
+// weighted by its recent latency and 429 rate. An endpoint that answers 429 is ejected for the
+// Retry-After it sent (or ejectDuration) and readmitted afterwards; if every endpoint is ejected,
+// calls go to the one due back first rather than failing.
+class UpstreamRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamRouter.class);
+
+    private final List<UpstreamEndpoint> endpoints;
+    private final Duration ejectDuration;
+    private final Duration maxEjectDuration;
+    private final MeterRegistry meterRegistry;
+
+    UpstreamRouter(List<UpstreamEndpoint> endpoints, Duration ejectDuration, Duration maxEjectDuration,
+                   MeterRegistry meterRegistry) {
+        this.endpoints = List.copyOf(endpoints);
+        this.ejectDuration = ejectDuration;
+        this.maxEjectDuration = maxEjectDuration;
+        this.meterRegistry = meterRegistry;
+
+        for (UpstreamEndpoint endpoint : this.endpoints) {
+            Gauge.builder("tts.upstream.endpoint.outstanding", endpoint, UpstreamEndpoint::getOutstanding)
+                    .tag("endpoint", endpoint.name)
+                    .register(meterRegistry);
+            Gauge.builder("tts.upstream.endpoint.latency", endpoint, UpstreamEndpoint::getLatencyMillis)
+                    .tag("endpoint", endpoint.name)
+                    .description("Moving average of successful call latency")
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+            Gauge.builder("tts.upstream.endpoint.throttle.rate", endpoint, UpstreamEndpoint::getThrottleRate)
+                    .tag("endpoint", endpoint.name)
+                    .description("Moving average of the share of calls answered 429")
+                    .register(meterRegistry);
+            Gauge.builder("tts.upstream.endpoint.ejected", endpoint, e -> e.isEjected(System.nanoTime()) ? 1 : 0)
+                    .tag("endpoint", endpoint.name)
+                    .register(meterRegistry);
+        }
+    }
+
+    UpstreamEndpoint choose() {
+        if (endpoints.size() == 1) {
+            return endpoints.get(0);
+        }
+        long now = System.nanoTime();
+        UpstreamEndpoint best = null;
+        double bestScore = Double.MAX_VALUE;
+        UpstreamEndpoint soonestBack = null;
+        for (UpstreamEndpoint endpoint : endpoints) {
+            if (endpoint.isEjected(now)) {
+                if (soonestBack == null || endpoint.ejectedUntilNanos() - soonestBack.ejectedUntilNanos() < 0) {
+                    soonestBack = endpoint;
+                }
+                continue;
+            }
+            double score = endpoint.score();
+            if (score < bestScore) {
+                best = endpoint;
+                bestScore = score;
+            }
+        }
+        return best != null ? best : soonestBack;
+    }
+
+    // Ejects the endpoint after a 429; returns whether another endpoint can take the retry right away
+    boolean throttled(UpstreamEndpoint endpoint, Duration retryAfter) {
+        Duration duration = retryAfter != null ? retryAfter : ejectDuration;
+        if (duration.compareTo(maxEjectDuration) > 0) {
+            duration = maxEjectDuration;
+        }
+        endpoint.eject(duration);
+        Counter.builder("tts.upstream.endpoint.ejections")
+                .tag("endpoint", endpoint.name)
+                .register(meterRegistry)
+                .increment();
+        if (endpoints.size() > 1) {
+            logger.warn("Upstream endpoint {} is throttling, ejected for {} ms", endpoint.name, duration.toMillis());
+        }
+
+        long now = System.nanoTime();
+        for (UpstreamEndpoint other : endpoints) {
+            if (other != endpoint && !other.isEjected(now)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    List<UpstreamEndpoint> getEndpoints() {
+        return endpoints;
+    }
+}
@@ -2,64 +2,236 @@ package com.ttsapp.tts;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
+// The vibe catalog. Readers work on an immutable snapshot (the list plus a case-insensitive name
+// index) that is swapped in one volatile write, so lookups and sampling never lock. The catalog
+// comes from the bundled vibes.json, or from app.vibes.file, which is watched and reloaded when
+// it changes; a file that fails to parse leaves the current catalog in place.
 @Service
 public class VibeService {
 
     private static final Logger logger = LoggerFactory.getLogger(VibeService.class);
-    private final List<Vibe> vibes;
-    private final Random random = new Random();
+    // Editors and ConfigMap updates touch the file several times in a row; reload once they settle
+    private static final long RELOAD_SETTLE_MILLIS = 250;
 
-    public VibeService() throws IOException {
-        this.vibes = loadVibes();
-        logger.info("Loaded {} vibes", vibes.size());
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Path file;
+    private volatile Catalog catalog;
+    private final List<Runnable> reloadListeners = new CopyOnWriteArrayList<>();
+    private final WatchService watchService;
+    private final Counter reloads;
+    private final Counter failedReloads;
+
+    @Autowired
+    public VibeService(@Value("${app.vibes.file:}") String file, MeterRegistry meterRegistry) throws IOException {
+        this.file = file.isBlank() ? null : Path.of(file).toAbsolutePath();
+        this.catalog = new Catalog(this.file != null ? loadFile(this.file) : loadBundled());
+        this.reloads = Counter.builder("tts.vibes.reloads").tag("result", "loaded").register(meterRegistry);
+        this.failedReloads = Counter.builder("tts.vibes.reloads").tag("result", "failed").register(meterRegistry);
+        Gauge.builder("tts.vibes", this, service -> service.catalog.vibes.size())
+                .description("Vibes in the current catalog")
+                .register(meterRegistry);
+
+        this.watchService = this.file != null ? watch(this.file) : null;
+        logger.info("Loaded {} vibes from {}", catalog.vibes.size(), this.file != null ? this.file : "classpath:vibes.json");
     }
 
-    private List<Vibe> loadVibes() throws IOException {
-        ObjectMapper mapper = new ObjectMapper();
-        ClassPathResource resource = new ClassPathResource("vibes.json");
-        
-        try (InputStream inputStream = resource.getInputStream()) {
+    // A fixed catalog, without a file to watch
+    VibeService(List<Vibe> vibes) {
+        this.file = null;
+        this.catalog = new Catalog(vibes);
+        this.watchService = null;
+        this.reloads = null;
+        this.failedReloads = null;
+    }
+
+    private List<Vibe> loadBundled() throws IOException {
+        try (InputStream inputStream = new ClassPathResource("vibes.json").getInputStream()) {
+            return mapper.readValue(inputStream, new TypeReference<List<Vibe>>() {});
+        }
+    }
+
+    private List<Vibe> loadFile(Path path) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(path)) {
             return mapper.readValue(inputStream, new TypeReference<List<Vibe>>() {});
         }
     }
 
     public List<Vibe> getAllVibes() {
-        return vibes;
+        return catalog.vibes;
     }
 
     public Optional<Vibe> getVibeByName(String name) {
-        return vibes.stream()
-                .filter(vibe -> vibe.getName().equalsIgnoreCase(name))
-                .findFirst();
+        if (name == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(catalog.byName.get(name.toLowerCase(Locale.ROOT)));
     }
 
+    // count distinct vibes, uniformly at random and in random order. Floyd's algorithm picks the
+    // indices in O(count) draws however large the catalog is, then a Fisher-Yates pass over just
+    // those indices randomizes their order.
     public List<Vibe> getRandomVibes(int count) {
-        if (count >= vibes.size()) {
+        List<Vibe> vibes = catalog.vibes;
+        int size = vibes.size();
+        if (count >= size) {
             return vibes;
         }
-        
-        return vibes.stream()
-                .sorted((a, b) -> random.nextInt(3) - 1) // Random shuffle
-                .limit(count)
-                .toList();
+        if (count <= 0) {
+            return List.of();
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int[] picked = new int[count];
+        for (int n = 0, j = size - count; j < size; n++, j++) {
+            int t = random.nextInt(j + 1);
+            picked[n] = contains(picked, n, t) ? j : t;
+        }
+        Vibe[] sample = new Vibe[count];
+        for (int i = count - 1; i >= 0; i--) {
+            int swap = random.nextInt(i + 1);
+            int index = picked[swap];
+            picked[swap] = picked[i];
+            sample[i] = vibes.get(index);
+        }
+        return Arrays.asList(sample);
     }
 
     public Vibe getRandomVibe() {
+        List<Vibe> vibes = catalog.vibes;
         if (vibes.isEmpty()) {
             return null;
         }
-        return vibes.get(random.nextInt(vibes.size()));
+        return vibes.get(ThreadLocalRandom.current().nextInt(vibes.size()));
+    }
+
+    // Called after each successful reload, on the watcher thread
+    public void onReload(Runnable listener) {
+        reloadListeners.add(listener);
+    }
+
+    // Re-reads the configured file and swaps the catalog in; false (catalog unchanged) if it can't be read
+    public boolean reload() {
+        if (file == null) {
+            return false;
+        }
+        try {
+            Catalog loaded = new Catalog(loadFile(file));
+            catalog = loaded;
+            reloads.increment();
+            logger.info("Reloaded {} vibes from {}", loaded.vibes.size(), file);
+        } catch (IOException | RuntimeException e) {
+            failedReloads.increment();
+            logger.error("Could not reload vibes from {}, keeping the current {} vibes: {}", file, catalog.vibes.size(), e.getMessage());
+            return false;
+        }
+        for (Runnable listener : reloadListeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                logger.warn("Vibe reload listener failed", e);
+            }
+        }
+        return true;
+    }
+
+    private static boolean contains(int[] values, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Watches the directory rather than the file, so replacing the file (atomic rename, or a
+    // Kubernetes ConfigMap swapping its symlinked data directory) is seen as well as editing it
+    private WatchService watch(Path path) throws IOException {
+        Path directory = path.getParent();
+        WatchService service = directory.getFileSystem().newWatchService();
+        directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        Thread.ofVirtual().name("vibe-watcher").start(() -> watchLoop(service));
+        logger.info("Watching {} for vibe changes", path);
+        return service;
+    }
+
+    private void watchLoop(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                // Swallow the rest of a burst of events before reloading once
+                WatchKey more = key;
+                do {
+                    more.pollEvents();
+                    more.reset();
+                    more = service.poll(RELOAD_SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                } while (more != null);
+                if (Files.isReadable(file)) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Shutting down
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    // One immutable version of the catalog; the first vibe with a given name wins, as the linear
+    // scan this replaced did
+    private static final class Catalog {
+        final List<Vibe> vibes;
+        final Map<String, Vibe> byName;
+
+        Catalog(List<Vibe> vibes) {
+            List<Vibe> valid = new ArrayList<>(vibes.size());
+            Map<String, Vibe> byName = new HashMap<>(vibes.size() * 2);
+            for (Vibe vibe : vibes) {
+                if (vibe == null || vibe.getName() == null || vibe.getName().isBlank()) {
+                    continue;
+                }
+                valid.add(vibe);
+                byName.putIfAbsent(vibe.getName().toLowerCase(Locale.ROOT), vibe);
+            }
+            this.vibes = Collections.unmodifiableList(valid);
+            this.byName = byName;
+        }
     }
 
     public static class Vibe {
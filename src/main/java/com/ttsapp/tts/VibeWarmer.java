@@ -0,0 +1,208 @@
+package com.ttsapp.tts;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Pre-synthesizes every vibe's script, read in the vibe's style, for every voice, and pins the
+// clips in the AudioStore. Picking a vibe and generating is what most first-time visitors do, and
+// that request then hits the cache instead of waiting on a full upstream round-trip. Each run is
+// capped at maxSyntheses upstream calls and runs a few at a time, so it never takes more than
+// its share of the upstream bulkhead. Off by default, since every clip is a billed generation.
+@Service
+public class VibeWarmer {
+
+    private static final Logger logger = LoggerFactory.getLogger(VibeWarmer.class);
+
+    private final VibeService vibeService;
+    private final SynthesisService synthesisService;
+    private final AudioStore audioStore;
+    private final boolean enabled;
+    private final List<String> formats;
+    private final int concurrency;
+    private final int maxSyntheses;
+    private final Duration initialDelay;
+    private final Duration refreshInterval;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofVirtual().name("vibe-warmer").factory());
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final Counter synthesizedClips;
+    private final Counter reusedClips;
+    private final Counter failedClips;
+
+    public VibeWarmer(VibeService vibeService, SynthesisService synthesisService, AudioStore audioStore,
+                      @Value("${app.vibe-warmer.enabled:false}") boolean enabled,
+                      @Value("${app.vibe-warmer.formats:mp3}") List<String> formats,
+                      @Value("${app.vibe-warmer.concurrency:2}") int concurrency,
+                      @Value("${app.vibe-warmer.max-syntheses:200}") int maxSyntheses,
+                      @Value("${app.vibe-warmer.initial-delay:30s}") Duration initialDelay,
+                      @Value("${app.vibe-warmer.refresh-interval:0s}") Duration refreshInterval,
+                      MeterRegistry meterRegistry) {
+        this.vibeService = vibeService;
+        this.synthesisService = synthesisService;
+        this.audioStore = audioStore;
+        this.enabled = enabled;
+        this.formats = formats.stream().map(String::trim).map(String::toLowerCase).distinct().toList();
+        this.concurrency = Math.max(1, concurrency);
+        this.maxSyntheses = maxSyntheses;
+        this.initialDelay = initialDelay;
+        this.refreshInterval = refreshInterval;
+
+        this.synthesizedClips = Counter.builder("tts.vibe.warmer.clips").tag("result", "synthesized").register(meterRegistry);
+        this.reusedClips = Counter.builder("tts.vibe.warmer.clips").tag("result", "reused").register(meterRegistry);
+        this.failedClips = Counter.builder("tts.vibe.warmer.clips").tag("result", "failed").register(meterRegistry);
+    }
+
+    // Started once the application is serving, so warming never delays startup
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (!synthesisService.isCacheEnabled()) {
+            logger.warn("Vibe warmer is enabled but the synthesis cache is not, so warmed clips would never be served; not starting");
+            return;
+        }
+        if (refreshInterval.isZero() || refreshInterval.isNegative()) {
+            scheduler.schedule(this::warm, initialDelay.toMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            scheduler.scheduleWithFixedDelay(this::warm, initialDelay.toMillis(), refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        // An edited vibes file gets its new clips (and loses its stale pins) without waiting for a refresh
+        vibeService.onReload(() -> scheduler.execute(this::warm));
+        logger.info("Vibe warmer scheduled: {} voices x {} formats per vibe, {} at a time, up to {} syntheses per run",
+                TtsController.AVAILABLE_VOICES.size(), formats, concurrency, maxSyntheses);
+    }
+
+    // One pass over every (vibe, voice, format). Clips already pinned cost nothing; clips already
+    // in the cache are pinned as they are; the rest are synthesized until the budget runs out.
+    public void warm() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        long started = System.nanoTime();
+        try {
+            Set<String> keys = new HashSet<>();
+            List<Clip> missing = new ArrayList<>();
+            int reused = 0;
+            for (VibeService.Vibe vibe : vibeService.getAllVibes()) {
+                for (String voice : TtsController.AVAILABLE_VOICES) {
+                    for (String format : formats) {
+                        Clip clip = new Clip(vibe.getScript(), voice, vibe.getDescription(), format);
+                        String key = synthesisService.cacheKey(clip.text, clip.voice, clip.style, clip.format);
+                        keys.add(key);
+                        if (audioStore.isPinned(key)) {
+                            continue;
+                        }
+                        StoredAudio cached = audioStore.lookup(key);
+                        if (cached != null && audioStore.pin(key, cached)) {
+                            reused++;
+                            reusedClips.increment();
+                            continue;
+                        }
+                        missing.add(clip);
+                    }
+                }
+            }
+            // Clips of vibes that have since been changed or removed
+            audioStore.retainPinned(keys);
+
+            int synthesized = synthesize(missing);
+            logger.info("Vibe warmer run finished in {} ms: {} clips pinned ({} bytes), {} synthesized, {} reused, {} still missing",
+                    (System.nanoTime() - started) / 1_000_000, audioStore.getPinnedCount(), audioStore.getPinnedBytes(),
+                    synthesized, reused, missing.size() - synthesized);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            logger.error("Vibe warmer run failed", e);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private int synthesize(List<Clip> clips) throws InterruptedException {
+        Semaphore slots = new Semaphore(concurrency);
+        AtomicBoolean stop = new AtomicBoolean();
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        for (Clip clip : clips) {
+            if (results.size() >= maxSyntheses) {
+                logger.info("Vibe warmer reached its budget of {} syntheses for this run", maxSyntheses);
+                break;
+            }
+            slots.acquire();
+            if (stop.get()) {
+                slots.release();
+                break;
+            }
+            results.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return synthesize(clip, stop);
+                } finally {
+                    slots.release();
+                }
+            }, executor));
+        }
+        return (int) results.stream().filter(CompletableFuture::join).count();
+    }
+
+    private boolean synthesize(Clip clip, AtomicBoolean stop) {
+        try {
+            SynthesisService.SynthesisResult result = synthesisService.synthesize(clip.text, clip.voice, clip.style, clip.format);
+            StoredAudio audio = audioStore.lookup(result.audioId);
+            if (audio == null) {
+                logger.warn("Vibe warmer clip {} / {} was evicted before it could be pinned", clip.voice, clip.format);
+                failedClips.increment();
+                return false;
+            }
+            if (!audioStore.pin(result.audioId, audio)) {
+                logger.warn("Pinned audio budget is full, stopping the vibe warmer run");
+                stop.set(true);
+                return false;
+            }
+            synthesizedClips.increment();
+            return true;
+        } catch (UpstreamBusyException e) {
+            // Users come first: leave the rest for the next run
+            logger.warn("Upstream is busy, stopping the vibe warmer run: {}", e.getMessage());
+            stop.set(true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop.set(true);
+        } catch (Exception e) {
+            logger.warn("Vibe warmer could not synthesize {} / {}: {}", clip.voice, clip.format, e.getMessage());
+        }
+        failedClips.increment();
+        return false;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private record Clip(String text, String voice, String style, String format) {
+    }
+}
@@ -0,0 +1,47 @@
+package com.ttsapp.tts;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Canonical 44-byte RIFF/WAVE header for uncompressed PCM
+public final class WavHeader {
+
+    public static final int SIZE = 44;
+
+    // Format of the pcm16 audio produced by the chat completions audio output
+    public static final int PCM16_SAMPLE_RATE = 24000;
+    public static final int PCM16_CHANNELS = 1;
+    public static final int PCM16_BITS_PER_SAMPLE = 16;
+
+    // Used as the data length while streaming, when the final length isn't known yet.
+    // Browsers treat it as "play until the connection closes".
+    public static final int UNKNOWN_LENGTH = 0xFFFFFFFF;
+
+    private WavHeader() {
+    }
+
+    public static byte[] pcm16(int dataLength) {
+        return create(dataLength, PCM16_SAMPLE_RATE, PCM16_CHANNELS, PCM16_BITS_PER_SAMPLE);
+    }
+
+    public static byte[] create(int dataLength, int sampleRate, int channels, int bitsPerSample) {
+        int blockAlign = channels * bitsPerSample / 8;
+        int riffLength = dataLength == UNKNOWN_LENGTH ? UNKNOWN_LENGTH : 36 + dataLength;
+
+        ByteBuffer header = ByteBuffer.allocate(SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(new byte[]{'R', 'I', 'F', 'F'});
+        header.putInt(riffLength);
+        header.put(new byte[]{'W', 'A', 'V', 'E'});
+        header.put(new byte[]{'f', 'm', 't', ' '});
+        header.putInt(16);
+        header.putShort((short) 1); // PCM
+        header.putShort((short) channels);
+        header.putInt(sampleRate);
+        header.putInt(sampleRate * blockAlign);
+        header.putShort((short) blockAlign);
+        header.putShort((short) bitsPerSample);
+        header.put(new byte[]{'d', 'a', 't', 'a'});
+        header.putInt(dataLength);
+        return header.array();
+    }
+}
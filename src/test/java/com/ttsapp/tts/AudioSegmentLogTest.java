@@ -0,0 +1,85 @@
+package com.ttsapp.tts;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Removal has to survive what rebuilds the index: a restart, and another replica scanning the
+// shared directory, whichever order it finds the clip and its tombstone in
+class AudioSegmentLogTest {
+
+    @TempDir
+    Path directory;
+
+    private final List<AudioSegmentLog> logs = new ArrayList<>();
+
+    @AfterEach
+    void closeLogs() {
+        logs.forEach(AudioSegmentLog::close);
+    }
+
+    @Test
+    void removedClipStaysGoneAfterARestart() {
+        AudioSegmentLog log = open();
+        assertThat(log.append("removed", clip(1))).isTrue();
+        assertThat(log.append("kept", clip(2))).isTrue();
+        log.remove("removed");
+        assertThat(log.get("removed")).isNull();
+        log.close();
+
+        AudioSegmentLog restarted = open();
+        assertThat(restarted.get("removed")).isNull();
+        assertThat(restarted.get("kept")).isNotNull();
+        assertThat(restarted.size()).isEqualTo(1);
+    }
+
+    @Test
+    void removalReachesOtherReplicas() {
+        AudioSegmentLog first = open();
+        assertThat(first.append("clip", clip(1))).isTrue();
+        AudioSegmentLog second = open();
+        assertThat(second.get("clip")).isNotNull();
+
+        // The tombstone is in the second replica's segment, the clip in the first's
+        second.remove("clip");
+        first.compact();
+        assertThat(first.get("clip")).isNull();
+        assertThat(open().get("clip")).isNull();
+    }
+
+    @Test
+    void clipStoredAgainAfterRemovalIsKept() throws InterruptedException {
+        AudioSegmentLog log = open();
+        assertThat(log.append("clip", clip(1))).isTrue();
+        log.remove("clip");
+        Thread.sleep(5);
+        assertThat(log.append("clip", clip(2))).isTrue();
+        log.close();
+
+        StoredAudio restored = open().get("clip");
+        assertThat(restored).isNotNull();
+        assertThat(restored.getEtag()).isEqualTo(clip(2).getEtag());
+    }
+
+    private AudioSegmentLog open() {
+        AudioSegmentLog log = new AudioSegmentLog(directory, 64 * 1024 * 1024, 8 * 1024 * 1024, Duration.ofHours(1),
+                new SimpleMeterRegistry());
+        logs.add(log);
+        return log;
+    }
+
+    private static StoredAudio clip(int seed) {
+        byte[] data = new byte[1024];
+        Arrays.fill(data, (byte) seed);
+        return new StoredAudio(data, "mp3");
+    }
+}
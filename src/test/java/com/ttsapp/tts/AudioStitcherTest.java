@@ -0,0 +1,224 @@
+package com.ttsapp.tts;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Clips are built by hand here, so every header field the stitcher rewrites can be checked
+// against what a player reads
+class AudioStitcherTest {
+
+    @Test
+    void singleClipIsReturnedAsItIs() {
+        byte[] clip = wav(pcm(10, 1));
+        assertThat(AudioStitcher.stitch("wav", List.of(clip))).isSameAs(clip);
+    }
+
+    @Test
+    void wavDataIsJoinedUnderOneHeader() {
+        byte[] first = pcm(1000, 1);
+        byte[] second = pcm(600, 2);
+        // A streamed clip whose header was never patched: the data runs to the end of the file
+        byte[] streamed = concat(WavHeader.pcm16(WavHeader.UNKNOWN_LENGTH), second);
+
+        byte[] stitched = AudioStitcher.stitch("wav", List.of(wav(first), streamed));
+
+        ByteBuffer header = ByteBuffer.wrap(stitched).order(ByteOrder.LITTLE_ENDIAN);
+        assertThat(Arrays.copyOfRange(stitched, 0, WavHeader.SIZE - 8))
+                .isEqualTo(Arrays.copyOfRange(WavHeader.pcm16(first.length + second.length), 0, WavHeader.SIZE - 8));
+        assertThat(header.getInt(4)).isEqualTo(stitched.length - 8);
+        assertThat(header.getInt(WavHeader.SIZE - 4)).isEqualTo(first.length + second.length);
+        assertThat(Arrays.copyOfRange(stitched, WavHeader.SIZE, stitched.length)).isEqualTo(concat(first, second));
+    }
+
+    @Test
+    void wavClipsWithDifferentFormatsAreRejected() {
+        byte[] mono = wav(pcm(100, 1));
+        byte[] stereo = concat(WavHeader.create(200, WavHeader.PCM16_SAMPLE_RATE, 2, 16), pcm(100, 2));
+
+        assertThatThrownBy(() -> AudioStitcher.stitch("wav", List.of(mono, stereo)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void mp3KeepsOnlyTheAudioFrames() {
+        byte[] first = mp3Clip(1, 3);
+        byte[] second = mp3Clip(4, 2);
+
+        byte[] stitched = AudioStitcher.stitch("mp3", List.of(first, second));
+
+        // No ID3 tags, no Xing frames: just the five audio frames, in order
+        assertThat(stitched).hasSize(5 * MP3_FRAME_LENGTH);
+        for (int frame = 0; frame < 5; frame++) {
+            int offset = frame * MP3_FRAME_LENGTH;
+            assertThat(AudioStitcher.mp3FrameLength(stitched, offset)).isEqualTo(MP3_FRAME_LENGTH);
+            assertThat(stitched[offset + 100]).isEqualTo((byte) (frame + 1));
+        }
+    }
+
+    @Test
+    void oggPagesFormOneContinuousStream() {
+        byte[] first = oggClip(0x1111, 960, 960);
+        byte[] second = oggClip(0x2222, 960, 480);
+
+        byte[] stitched = AudioStitcher.stitch("opus", List.of(first, second));
+
+        List<ByteBuffer> pages = pages(stitched);
+        // OpusHead and OpusTags of the first clip, then the audio pages of both
+        assertThat(pages).hasSize(6);
+        long[] granules = {0, 0, 960, 1920, 2880, 3360};
+        for (int i = 0; i < pages.size(); i++) {
+            ByteBuffer page = pages.get(i);
+            int flags = page.get(5) & 0xff;
+            assertThat(page.getInt(14)).as("serial of page %d", i).isEqualTo(0x1111);
+            assertThat(page.getInt(18)).as("sequence of page %d", i).isEqualTo(i);
+            assertThat(page.getLong(6)).as("granule of page %d", i).isEqualTo(granules[i]);
+            assertThat((flags & 0x02) != 0).as("BOS on page %d", i).isEqualTo(i == 0);
+            assertThat((flags & 0x04) != 0).as("EOS on page %d", i).isEqualTo(i == pages.size() - 1);
+            assertThat(page.getInt(22)).as("CRC of page %d", i).isEqualTo(oggCrc(page));
+        }
+        assertThat(body(pages.get(0))).startsWith("OpusHead".getBytes(StandardCharsets.US_ASCII));
+        for (ByteBuffer page : pages.subList(2, pages.size())) {
+            assertThat(new String(body(page), StandardCharsets.US_ASCII)).doesNotStartWith("Opus");
+        }
+    }
+
+    @Test
+    void notAnOggClipIsRejected() {
+        assertThatThrownBy(() -> AudioStitcher.stitch("opus", List.of(oggClip(1, 960), wav(pcm(100, 1)))))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    // ---- WAV ----
+
+    private static byte[] wav(byte[] pcm) {
+        return concat(WavHeader.pcm16(pcm.length), pcm);
+    }
+
+    private static byte[] pcm(int samples, int seed) {
+        byte[] pcm = new byte[samples * 2];
+        for (int i = 0; i < pcm.length; i++) {
+            pcm[i] = (byte) (i * seed);
+        }
+        return pcm;
+    }
+
+    // ---- MP3: MPEG-1 Layer III, 128 kbps, 44.1 kHz, stereo, no padding ----
+
+    private static final int MP3_FRAME_LENGTH = 144 * 128_000 / 44_100;
+
+    // An ID3v2 tag, a Xing frame, the numbered audio frames, and an ID3v1 tag
+    private static byte[] mp3Clip(int firstFrame, int frames) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] id3 = new byte[10 + 20];
+        id3[0] = 'I';
+        id3[1] = 'D';
+        id3[2] = '3';
+        id3[3] = 4;
+        id3[9] = 20;
+        out.writeBytes(id3);
+
+        byte[] xing = mp3Frame(0);
+        // After the 4-byte header and 32 bytes of side information for MPEG-1 stereo
+        System.arraycopy("Xing".getBytes(StandardCharsets.US_ASCII), 0, xing, 36, 4);
+        out.writeBytes(xing);
+        for (int frame = firstFrame; frame < firstFrame + frames; frame++) {
+            out.writeBytes(mp3Frame(frame));
+        }
+
+        byte[] id3v1 = new byte[128];
+        id3v1[0] = 'T';
+        id3v1[1] = 'A';
+        id3v1[2] = 'G';
+        out.writeBytes(id3v1);
+        return out.toByteArray();
+    }
+
+    private static byte[] mp3Frame(int number) {
+        byte[] frame = new byte[MP3_FRAME_LENGTH];
+        Arrays.fill(frame, 4, frame.length, (byte) number);
+        frame[0] = (byte) 0xff;
+        frame[1] = (byte) 0xfb;
+        frame[2] = (byte) 0x90;
+        frame[3] = 0x00;
+        return frame;
+    }
+
+    // ---- Ogg Opus ----
+
+    // OpusHead and OpusTags pages, then one audio page per entry of samples, the last marked EOS
+    private static byte[] oggClip(int serial, int... samples) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] head = Arrays.copyOf("OpusHead".getBytes(StandardCharsets.US_ASCII), 19);
+        byte[] tags = Arrays.copyOf("OpusTags".getBytes(StandardCharsets.US_ASCII), 16);
+        int sequence = 0;
+        out.writeBytes(oggPage(0x02, 0, serial, sequence++, head));
+        out.writeBytes(oggPage(0, 0, serial, sequence++, tags));
+        long granule = 0;
+        for (int i = 0; i < samples.length; i++) {
+            granule += samples[i];
+            byte[] packet = new byte[40 + i];
+            Arrays.fill(packet, (byte) (0x80 + i));
+            out.writeBytes(oggPage(i == samples.length - 1 ? 0x04 : 0, granule, serial, sequence++, packet));
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] oggPage(int flags, long granule, int serial, int sequence, byte[] packet) {
+        ByteBuffer page = ByteBuffer.allocate(27 + 1 + packet.length).order(ByteOrder.LITTLE_ENDIAN);
+        page.putInt(0x5367674f).put((byte) 0).put((byte) flags).putLong(granule).putInt(serial).putInt(sequence)
+                .putInt(0).put((byte) 1).put((byte) packet.length).put(packet);
+        page.putInt(22, oggCrc(page));
+        return page.array();
+    }
+
+    private static List<ByteBuffer> pages(byte[] stream) {
+        List<ByteBuffer> pages = new ArrayList<>();
+        int position = 0;
+        while (position < stream.length) {
+            int segments = stream[position + 26] & 0xff;
+            int length = 27 + segments;
+            for (int i = 0; i < segments; i++) {
+                length += stream[position + 27 + i] & 0xff;
+            }
+            pages.add(ByteBuffer.wrap(Arrays.copyOfRange(stream, position, position + length)).order(ByteOrder.LITTLE_ENDIAN));
+            position += length;
+        }
+        return pages;
+    }
+
+    private static byte[] body(ByteBuffer page) {
+        int segments = page.get(26) & 0xff;
+        return Arrays.copyOfRange(page.array(), 27 + segments, page.capacity());
+    }
+
+    // Ogg's CRC-32 (polynomial 0x04c11db7, no reflection, zero initial value) over the page with
+    // its checksum field zeroed
+    private static int oggCrc(ByteBuffer page) {
+        byte[] bytes = page.array().clone();
+        Arrays.fill(bytes, 22, 26, (byte) 0);
+        int crc = 0;
+        for (byte b : bytes) {
+            crc ^= (b & 0xff) << 24;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x80000000) != 0 ? (crc << 1) ^ 0x04c11db7 : crc << 1;
+            }
+        }
+        return crc;
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] joined = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, joined, first.length, second.length);
+        return joined;
+    }
+}
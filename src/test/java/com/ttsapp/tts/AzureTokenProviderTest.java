@@ -0,0 +1,180 @@
+package com.ttsapp.tts;
+
+import com.azure.core.credential.AccessToken;
+import com.azure.core.credential.TokenCredential;
+import com.azure.core.credential.TokenRequestContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Drives the provider with a fake credential and a clock the test moves. The provider's own
+// scheduler runs on real time and is hours away from firing, so every refresh here is one that
+// getToken triggered.
+class AzureTokenProviderTest {
+
+    private static final Instant START = Instant.parse("2026-01-01T00:00:00Z");
+    private static final Duration LIFETIME = Duration.ofHours(1);
+    private static final Duration MARGIN = Duration.ofMinutes(5);
+
+    private final MutableClock clock = new MutableClock(START);
+    private final FakeCredential credential = new FakeCredential();
+    private final AzureTokenProvider provider = new AzureTokenProvider(credential, "scope/.default", MARGIN, clock);
+
+    @AfterEach
+    void close() {
+        provider.close();
+    }
+
+    @Test
+    void concurrentCallersShareOneRefresh() throws Exception {
+        CompletableFuture<AccessToken> pending = new CompletableFuture<>();
+        credential.respond(Mono.fromFuture(pending));
+
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<AccessToken>> tokens = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                tokens.add(callers.submit(provider::getToken));
+            }
+            // Wait until the refresh has started, then let the callers pile up behind it
+            while (credential.calls.get() == 0) {
+                Thread.onSpinWait();
+            }
+            Thread.sleep(100);
+
+            AccessToken token = token("first", START.plus(LIFETIME));
+            pending.complete(token);
+            for (Future<AccessToken> result : tokens) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).isSameAs(token);
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        assertThat(credential.calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void refreshesAheadOfExpiryWhileServingTheCachedToken() {
+        AccessToken first = token("first", START.plus(LIFETIME));
+        AccessToken second = token("second", START.plus(LIFETIME.multipliedBy(2)));
+        credential.respond(Mono.just(first));
+        credential.respond(Mono.just(second));
+
+        assertThat(provider.getToken()).isSameAs(first);
+        clock.advance(LIFETIME.minus(MARGIN).minusSeconds(1));
+        assertThat(provider.getToken()).isSameAs(first);
+        assertThat(credential.calls.get()).isEqualTo(1);
+
+        // Past the refresh point but well before expiry: the caller keeps the cached token and
+        // the refresh replaces it for the next one
+        clock.advance(Duration.ofSeconds(2));
+        assertThat(provider.getToken()).isSameAs(first);
+        assertThat(credential.calls.get()).isEqualTo(2);
+        assertThat(provider.getToken()).isSameAs(second);
+        assertThat(credential.calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void failedRefreshIsRetriedAfterTheDelayNotOnEveryRequest() {
+        AccessToken first = token("first", START.plus(LIFETIME));
+        AccessToken second = token("second", START.plus(LIFETIME.multipliedBy(2)));
+        credential.respond(Mono.just(first));
+        credential.respond(Mono.error(new RuntimeException("IMDS unavailable")));
+        credential.respond(Mono.just(second));
+
+        assertThat(provider.getToken()).isSameAs(first);
+        clock.advance(LIFETIME.minus(MARGIN).plusSeconds(1));
+
+        // The failing refresh leaves the still-valid token in place
+        assertThat(provider.getToken()).isSameAs(first);
+        assertThat(credential.calls.get()).isEqualTo(2);
+        for (int i = 0; i < 10; i++) {
+            assertThat(provider.getToken()).isSameAs(first);
+        }
+        assertThat(credential.calls.get()).isEqualTo(2);
+
+        clock.advance(Duration.ofSeconds(11));
+        assertThat(provider.getToken()).isSameAs(first);
+        assertThat(credential.calls.get()).isEqualTo(3);
+        assertThat(provider.getToken()).isSameAs(second);
+    }
+
+    @Test
+    void expiredTokenWaitsForARefresh() {
+        AccessToken first = token("first", START.plus(LIFETIME));
+        AccessToken second = token("second", START.plus(LIFETIME.multipliedBy(2)));
+        credential.respond(Mono.just(first));
+        credential.respond(Mono.just(second));
+
+        assertThat(provider.getToken()).isSameAs(first);
+        clock.advance(LIFETIME);
+        assertThat(provider.getToken()).isSameAs(second);
+        assertThat(credential.calls.get()).isEqualTo(2);
+    }
+
+    private static AccessToken token(String value, Instant expiresAt) {
+        return new AccessToken(value, OffsetDateTime.ofInstant(expiresAt, ZoneOffset.UTC));
+    }
+
+    private static final class FakeCredential implements TokenCredential {
+        final AtomicInteger calls = new AtomicInteger();
+        private final Queue<Mono<AccessToken>> responses = new ConcurrentLinkedQueue<>();
+
+        void respond(Mono<AccessToken> response) {
+            responses.add(response);
+        }
+
+        @Override
+        public Mono<AccessToken> getToken(TokenRequestContext request) {
+            calls.incrementAndGet();
+            Mono<AccessToken> response = responses.poll();
+            return response != null ? response : Mono.error(new IllegalStateException("No token response queued"));
+        }
+    }
+
+    private static final class MutableClock extends Clock {
+        private volatile Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
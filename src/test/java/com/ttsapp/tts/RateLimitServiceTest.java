@@ -0,0 +1,138 @@
+package com.ttsapp.tts;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Races many threads on the same clients through the lock-free limiter. Usage drains by about 1/600
+// of a window per 100ms tick, far less than one request's cost while these tests run, so any
+// admission beyond the configured limit is a lost update.
+class RateLimitServiceTest {
+
+    private static final int THREADS = 16;
+
+    private final InMemoryRateLimitStore store = new InMemoryRateLimitStore();
+
+    @AfterEach
+    void closeStore() {
+        store.close();
+    }
+
+    @Test
+    void admitsExactlyTheMinuteLimitUnderContention() throws InterruptedException {
+        RateLimitService service = service(20, 1000, 1_000_000);
+        AtomicInteger admitted = new AtomicInteger();
+
+        race(THREADS, thread -> {
+            for (int i = 0; i < 50; i++) {
+                if (service.isAllowed("client", 10)) {
+                    admitted.incrementAndGet();
+                }
+            }
+        });
+
+        assertThat(admitted.get()).isEqualTo(20);
+        assertThat(service.getRateLimitInfo("client").currentMinuteRequests).isEqualTo(20);
+    }
+
+    @Test
+    void admitsExactlyTheCharacterLimitUnderContention() throws InterruptedException {
+        // 100 characters a request against 3000 an hour: the third limit binds first
+        RateLimitService service = service(1000, 1000, 3000);
+        AtomicInteger admitted = new AtomicInteger();
+
+        race(THREADS, thread -> {
+            for (int i = 0; i < 20; i++) {
+                if (service.isAllowed("client", 100)) {
+                    admitted.incrementAndGet();
+                }
+            }
+        });
+
+        assertThat(admitted.get()).isEqualTo(30);
+    }
+
+    @Test
+    void sweeperRetirementLosesNoUpdates() throws InterruptedException {
+        int clients = 200;
+        int limit = 5;
+        RateLimitService service = service(limit, 1000, 1_000_000);
+        AtomicIntegerArray admitted = new AtomicIntegerArray(clients);
+        AtomicBoolean sweeping = new AtomicBoolean(true);
+
+        // Fresh states are drained, so the sweeper keeps retiring them while requests race to charge
+        Thread sweeper = Thread.ofPlatform().start(() -> {
+            while (sweeping.get()) {
+                store.sweep();
+            }
+        });
+        try {
+            race(THREADS, thread -> {
+                for (int client = 0; client < clients; client++) {
+                    for (int i = 0; i < 2; i++) {
+                        if (service.isAllowed("client-" + client, 1)) {
+                            admitted.incrementAndGet(client);
+                        }
+                    }
+                }
+            });
+        } finally {
+            sweeping.set(false);
+            sweeper.join();
+        }
+
+        for (int client = 0; client < clients; client++) {
+            assertThat(admitted.get(client)).as("admissions for client-%d", client).isEqualTo(limit);
+            assertThat(service.getRateLimitInfo("client-" + client).currentMinuteRequests).isEqualTo(limit);
+        }
+        assertThat(store.trackedClients()).isEqualTo(clients);
+    }
+
+    private RateLimitService service(int perMinute, int perHour, int charactersPerHour) {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setMaxRequestsPerMinute(perMinute);
+        properties.setMaxRequestsPerHour(perHour);
+        properties.setMaxCharactersPerHour(charactersPerHour);
+        return new RateLimitService(properties, store, new SimpleMeterRegistry());
+    }
+
+    // Starts every thread at once and waits for all of them
+    private static void race(int threads, ThreadBody body) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> started = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            started.add(Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                    body.run(thread);
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            }));
+        }
+        start.countDown();
+        for (Thread thread : started) {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        }
+        assertThat(failures).isEmpty();
+    }
+
+    @FunctionalInterface
+    private interface ThreadBody {
+        void run(int thread) throws Exception;
+    }
+}
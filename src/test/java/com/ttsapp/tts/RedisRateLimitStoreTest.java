@@ -0,0 +1,153 @@
+package com.ttsapp.tts;
+
+import com.github.fppt.jedismock.RedisServer;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulRedisConnection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Runs the store against jedis-mock, an in-process server speaking the Redis protocol and Lua.
+// The flush interval is an hour, so apart from the connect at startup every flush is the test's.
+class RedisRateLimitStoreTest {
+
+    private static final int PER_MINUTE = 10;
+    private static final long MINUTE_COST = GcraState.cost(1, PER_MINUTE);
+    private static final long HOURLY_REQUEST_COST = GcraState.cost(1, 100);
+    private static final long HOURLY_CHARACTER_COST = GcraState.cost(100, 50_000);
+    private static final String PREFIX = "test:rate-limit:";
+
+    private RedisServer server;
+    private final List<AutoCloseable> closeables = new ArrayList<>();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = RedisServer.newRedisServer();
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() throws Exception {
+        // Stores before the clients they were given
+        for (int i = closeables.size() - 1; i >= 0; i--) {
+            closeables.get(i).close();
+        }
+        server.stop();
+    }
+
+    @Test
+    void flushSharesUsageBetweenReplicas() {
+        RedisRateLimitStore first = replica(server.getBindPort());
+        RedisRateLimitStore second = replica(server.getBindPort());
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(acquire(first)).isNull();
+        }
+        first.flush();
+
+        // New to the second replica: admitted against an empty mirror, then reconciled by the flush
+        assertThat(acquire(second)).isNull();
+        assertThat(minuteRequests(second)).isEqualTo(1);
+        second.flush();
+        assertThat(minuteRequests(second)).isEqualTo(4);
+
+        // The first replica adopts the shared total on its next push
+        assertThat(acquire(first)).isNull();
+        first.flush();
+        assertThat(minuteRequests(first)).isEqualTo(5);
+    }
+
+    @Test
+    void flushReconcilesNewClientsWithNothingPending() {
+        RedisRateLimitStore first = replica(server.getBindPort());
+        RedisRateLimitStore second = replica(server.getBindPort());
+        for (int i = 0; i < PER_MINUTE; i++) {
+            assertThat(acquire(first)).isNull();
+        }
+        first.flush();
+
+        // A free request leaves nothing to push, so only the reconcile can tell the second replica
+        assertThat(second.tryAcquire("client", 0, 0, 0)).isNull();
+        second.flush();
+        assertThat(acquire(second)).isEqualTo(RateLimitStore.Limit.MINUTE_REQUESTS);
+    }
+
+    @Test
+    void chargeScriptKeepsDebtsWithAnHourlyExpiry() {
+        RedisRateLimitStore store = replica(server.getBindPort());
+        assertThat(acquire(store)).isNull();
+        store.flush();
+
+        try (StatefulRedisConnection<String, String> connection = client(server.getBindPort()).connect()) {
+            var state = connection.sync().hgetall(PREFIX + "client");
+            assertThat(state).containsKeys("t", "m", "h", "c");
+            assertThat(Double.parseDouble(state.get("m"))).isBetween(MINUTE_COST - 200.0, (double) MINUTE_COST);
+            assertThat(connection.sync().pttl(PREFIX + "client")).isBetween(1L, 3_600_000L);
+        }
+    }
+
+    @Test
+    void reloadsTheScriptAfterRedisForgetsIt() {
+        RedisRateLimitStore store = replica(server.getBindPort());
+        assertThat(acquire(store)).isNull();
+        store.flush();
+
+        try (StatefulRedisConnection<String, String> connection = client(server.getBindPort()).connect()) {
+            connection.sync().scriptFlush();
+        }
+        // This push fails and reloads the script; its charge stays local, and the next one is shared
+        assertThat(acquire(store)).isNull();
+        store.flush();
+        assertThat(acquire(store)).isNull();
+        store.flush();
+
+        RedisRateLimitStore other = replica(server.getBindPort());
+        other.tryAcquire("client", 0, 0, 0);
+        other.flush();
+        assertThat(minuteRequests(other)).isEqualTo(2);
+    }
+
+    @Test
+    void startsAndLimitsLocallyWhileRedisIsDown() throws IOException {
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+        RedisRateLimitStore store = replica(closedPort);
+
+        for (int i = 0; i < PER_MINUTE; i++) {
+            assertThat(acquire(store)).isNull();
+        }
+        assertThat(acquire(store)).isEqualTo(RateLimitStore.Limit.MINUTE_REQUESTS);
+        store.flush();
+        assertThat(minuteRequests(store)).isEqualTo(PER_MINUTE);
+    }
+
+    private RedisRateLimitStore replica(int port) {
+        RedisRateLimitStore store = new RedisRateLimitStore(client(port), PREFIX, Duration.ofHours(1), Duration.ofSeconds(2));
+        closeables.add(store);
+        return store;
+    }
+
+    private RedisClient client(int port) {
+        RedisClient client = RedisClient.create("redis://127.0.0.1:" + port);
+        closeables.add(client::shutdown);
+        return client;
+    }
+
+    private static RateLimitStore.Limit acquire(RedisRateLimitStore store) {
+        return store.tryAcquire("client", MINUTE_COST, HOURLY_REQUEST_COST, HOURLY_CHARACTER_COST);
+    }
+
+    private static int minuteRequests(RedisRateLimitStore store) {
+        return GcraState.usage(GcraState.minuteDebt(store.usage("client")), PER_MINUTE);
+    }
+}
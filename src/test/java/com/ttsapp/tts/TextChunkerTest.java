@@ -0,0 +1,66 @@
+package com.ttsapp.tts;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TextChunkerTest {
+
+    @Test
+    void shortTextIsOneChunk() {
+        assertThat(TextChunker.split("  Hello there. How are you?  ", 100)).containsExactly("Hello there. How are you?");
+    }
+
+    @Test
+    void chunksEndAtSentencesAndNeverExceedTheLimit() {
+        String sentence = "The quick brown fox jumps over the lazy dog. ";
+        String text = sentence.repeat(40);
+
+        List<String> chunks = TextChunker.split(text, 200);
+
+        assertThat(chunks).hasSizeGreaterThan(1);
+        assertThat(chunks).allSatisfy(chunk -> {
+            assertThat(chunk.length()).isLessThanOrEqualTo(200);
+            assertThat(chunk).startsWith("The quick").endsWith("dog.");
+        });
+        assertThat(words(String.join(" ", chunks))).isEqualTo(words(text));
+    }
+
+    @Test
+    void paragraphsThatFitStayTogether() {
+        String first = "First paragraph, one sentence.";
+        String second = "Second paragraph. It has two sentences.";
+        String third = "Third.";
+
+        List<String> chunks = TextChunker.split(first + "\n\n" + second + "\n\n" + third, first.length() + 2 + second.length());
+
+        assertThat(chunks).containsExactly(first + "\n\n" + second, third);
+    }
+
+    @Test
+    void overLongSentencesBreakAtClausesThenWords() {
+        String sentence = "one two three four five, six seven eight nine ten, eleven twelve thirteen fourteen fifteen.";
+
+        List<String> chunks = TextChunker.split(sentence, 40);
+
+        assertThat(chunks).allSatisfy(chunk -> assertThat(chunk.length()).isLessThanOrEqualTo(40));
+        assertThat(chunks.get(0)).isEqualTo("one two three four five,");
+        assertThat(words(String.join(" ", chunks))).isEqualTo(words(sentence));
+    }
+
+    @Test
+    void aWordLongerThanAChunkIsTheOnlyThingCut() {
+        String url = "https://example.com/" + "a".repeat(100);
+
+        List<String> chunks = TextChunker.split("See " + url + " for details.", 40);
+
+        assertThat(chunks).allSatisfy(chunk -> assertThat(chunk.length()).isLessThanOrEqualTo(40));
+        assertThat(String.join("", chunks).replace(" ", "")).isEqualTo(("See" + url + "fordetails."));
+    }
+
+    private static List<String> words(String text) {
+        return List.of(text.trim().split("\\s+"));
+    }
+}
@@ -0,0 +1,255 @@
+package com.ttsapp.tts;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.InstanceOfAssertFactories.type;
+
+// UpstreamResilience and its circuit breaker against in-process stub attempts, each of which
+// answers the way Azure OpenAI would: a value, a typed UpstreamException, or nothing yet
+class UpstreamResilienceTest {
+
+    private UpstreamResilience resilience;
+
+    @AfterEach
+    void shutdown() {
+        if (resilience != null) {
+            resilience.shutdown();
+        }
+    }
+
+    @Test
+    void retryAfterMsWinsOverRetryAfter() {
+        assertThat(UpstreamException.retryAfter(headers(Map.of("retry-after-ms", "250", "Retry-After", "3"))))
+                .isEqualTo(Duration.ofMillis(250));
+        assertThat(UpstreamException.retryAfter(headers(Map.of("Retry-After", "3"))))
+                .isEqualTo(Duration.ofSeconds(3));
+        assertThat(UpstreamException.retryAfter(headers(Map.of("retry-after-ms", "soon", "Retry-After", "2"))))
+                .isEqualTo(Duration.ofSeconds(2));
+        assertThat(UpstreamException.retryAfter(headers(Map.of()))).isNull();
+
+        String inTenSeconds = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(10));
+        assertThat(UpstreamException.retryAfter(headers(Map.of("Retry-After", inTenSeconds))))
+                .isBetween(Duration.ofSeconds(8), Duration.ofSeconds(10));
+    }
+
+    @Test
+    void retryWaitsTheDelayTheServerAskedFor() throws Exception {
+        resilience = resilience(properties());
+        AtomicInteger attempts = new AtomicInteger();
+        long start = System.nanoTime();
+
+        String result = resilience.<String>execute(hedge -> attempts.incrementAndGet() == 1
+                ? CompletableFuture.failedFuture(new UpstreamException(429, "throttled", Duration.ofMillis(300)))
+                : CompletableFuture.completedFuture("audio")).get(5, TimeUnit.SECONDS);
+
+        assertThat(result).isEqualTo("audio");
+        assertThat(attempts.get()).isEqualTo(2);
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(300));
+    }
+
+    @Test
+    void retryAfterBeyondTheMaximumIsPassedOnAsBusy() {
+        resilience = resilience(properties());
+        AtomicInteger attempts = new AtomicInteger();
+
+        CompletableFuture<String> call = resilience.execute(hedge -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.failedFuture(new UpstreamException(429, "throttled", Duration.ofSeconds(60)));
+        });
+
+        assertThatThrownBy(() -> call.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .cause()
+                .asInstanceOf(type(UpstreamBusyException.class))
+                .extracting(UpstreamBusyException::getRetryAfterSeconds)
+                .isEqualTo(60L);
+        assertThat(attempts.get()).isEqualTo(1);
+    }
+
+    @Test
+    void nonRetryableErrorsAreNotRetried() {
+        resilience = resilience(properties());
+        AtomicInteger attempts = new AtomicInteger();
+
+        CompletableFuture<String> call = resilience.execute(hedge -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.failedFuture(new UpstreamException(400, "bad request", null));
+        });
+
+        assertThatThrownBy(() -> call.get(5, TimeUnit.SECONDS)).cause().isInstanceOf(UpstreamException.class);
+        assertThat(attempts.get()).isEqualTo(1);
+    }
+
+    @Test
+    void throttlingDoesNotOpenTheCircuit() throws Exception {
+        UpstreamResilienceProperties properties = properties();
+        properties.getRetry().setMaxAttempts(1);
+        resilience = resilience(properties);
+        AtomicInteger attempts = new AtomicInteger();
+
+        for (int i = 0; i < 10; i++) {
+            CompletableFuture<String> call = resilience.execute(hedge -> {
+                attempts.incrementAndGet();
+                return CompletableFuture.failedFuture(new UpstreamException(429, "throttled", null));
+            });
+            assertThatThrownBy(() -> call.get(5, TimeUnit.SECONDS)).cause().isInstanceOf(UpstreamBusyException.class);
+        }
+
+        assertThat(resilience.<String>execute(hedge -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.completedFuture("audio");
+        }).get(5, TimeUnit.SECONDS)).isEqualTo("audio");
+        assertThat(attempts.get()).isEqualTo(11);
+    }
+
+    @Test
+    void serverErrorsOpenTheCircuitAndCallsFailFast() {
+        UpstreamResilienceProperties properties = properties();
+        properties.getRetry().setMaxAttempts(1);
+        resilience = resilience(properties);
+        AtomicInteger attempts = new AtomicInteger();
+
+        for (int i = 0; i < 4; i++) {
+            CompletableFuture<String> call = resilience.execute(hedge -> {
+                attempts.incrementAndGet();
+                return CompletableFuture.failedFuture(new UpstreamException(500, "server error", null));
+            });
+            assertThatThrownBy(() -> call.get(5, TimeUnit.SECONDS)).cause().isInstanceOf(UpstreamException.class);
+        }
+
+        CompletableFuture<String> rejected = resilience.execute(hedge -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.completedFuture("audio");
+        });
+        assertThatThrownBy(() -> rejected.get(5, TimeUnit.SECONDS)).cause().isInstanceOf(UpstreamBusyException.class);
+        assertThat(attempts.get()).isEqualTo(4);
+    }
+
+    @Test
+    void halfOpenCircuitLetsTrialCallsDecide() throws Exception {
+        UpstreamResilienceProperties.CircuitBreaker properties = properties().getCircuitBreaker();
+        properties.setHalfOpenCalls(1);
+        UpstreamCircuitBreaker breaker = new UpstreamCircuitBreaker(properties, new SimpleMeterRegistry());
+        openCircuit(breaker);
+        assertThat(breaker.tryAcquirePermission()).isFalse();
+
+        Thread.sleep(250);
+        // One trial call at a time; a failed trial opens the circuit for another round
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.getState()).isEqualTo(UpstreamCircuitBreaker.State.HALF_OPEN);
+        assertThat(breaker.tryAcquirePermission()).isFalse();
+        breaker.recordFailure();
+        assertThat(breaker.getState()).isEqualTo(UpstreamCircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquirePermission()).isFalse();
+
+        Thread.sleep(250);
+        // A trial that says nothing about health frees its slot for another
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        breaker.recordIgnored();
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        breaker.recordSuccess();
+        assertThat(breaker.getState()).isEqualTo(UpstreamCircuitBreaker.State.CLOSED);
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+    }
+
+    @Test
+    void hedgeThatWinsCancelsThePrimary() throws Exception {
+        resilience = resilience(hedgingProperties());
+        warmUp(resilience);
+        CompletableFuture<String> primary = new CompletableFuture<>();
+
+        String result = resilience.<String>execute(hedge -> hedge ? CompletableFuture.completedFuture("hedge") : primary)
+                .get(5, TimeUnit.SECONDS);
+
+        assertThat(result).isEqualTo("hedge");
+        assertThat(awaitCancelled(primary)).isCancelled();
+    }
+
+    @Test
+    void primaryThatWinsCancelsTheHedge() throws Exception {
+        resilience = resilience(hedgingProperties());
+        warmUp(resilience);
+        CompletableFuture<String> primary = new CompletableFuture<>();
+        CompletableFuture<String> hedged = new CompletableFuture<>();
+
+        CompletableFuture<String> call = resilience.execute(hedge -> hedge ? hedged : primary);
+        // The hedge goes out once the call has run past the 50 ms threshold
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (hedged.getNumberOfDependents() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(hedged.getNumberOfDependents()).isPositive();
+        primary.complete("primary");
+
+        assertThat(call.get(5, TimeUnit.SECONDS)).isEqualTo("primary");
+        assertThat(awaitCancelled(hedged)).isCancelled();
+    }
+
+    private static UpstreamResilienceProperties properties() {
+        UpstreamResilienceProperties properties = new UpstreamResilienceProperties();
+        properties.getRetry().setInitialBackoff(Duration.ofMillis(10));
+        properties.getRetry().setMaxBackoff(Duration.ofMillis(50));
+        properties.getCircuitBreaker().setWindowSize(4);
+        properties.getCircuitBreaker().setMinimumCalls(4);
+        properties.getCircuitBreaker().setOpenDuration(Duration.ofMillis(200));
+        return properties;
+    }
+
+    private static UpstreamResilienceProperties hedgingProperties() {
+        UpstreamResilienceProperties properties = properties();
+        properties.getHedge().setEnabled(true);
+        properties.getHedge().setMinSamples(1);
+        properties.getHedge().setMinDelay(Duration.ofMillis(50));
+        return properties;
+    }
+
+    private static UpstreamResilience resilience(UpstreamResilienceProperties properties) {
+        return new UpstreamResilience(properties, new SimpleMeterRegistry());
+    }
+
+    // One fast call, so there is a latency sample to hedge on
+    private static void warmUp(UpstreamResilience resilience) throws Exception {
+        resilience.<String>execute(hedge -> CompletableFuture.completedFuture("warm")).get(5, TimeUnit.SECONDS);
+    }
+
+    // The loser is cancelled just after the winner completes the call, possibly on another thread
+    private static <T> CompletableFuture<T> awaitCancelled(CompletableFuture<T> future) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!future.isDone() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        return future;
+    }
+
+    private static void openCircuit(UpstreamCircuitBreaker breaker) {
+        for (int i = 0; i < 4; i++) {
+            assertThat(breaker.tryAcquirePermission()).isTrue();
+            breaker.recordFailure();
+        }
+        assertThat(breaker.getState()).isEqualTo(UpstreamCircuitBreaker.State.OPEN);
+    }
+
+    private static HttpHeaders headers(Map<String, String> values) {
+        Map<String, List<String>> multi = new HashMap<>();
+        values.forEach((name, value) -> multi.put(name, List.of(value)));
+        return HttpHeaders.of(multi, (name, value) -> true);
+    }
+}